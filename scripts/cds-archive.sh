@@ -0,0 +1,53 @@
+#!/bin/bash
+
+# APPCDS ARCHIVE
+# Starts PixelPatrol until its Spring context is refreshed (beans created; no web server and no browser,
+# those start later) and dumps every class it loaded into lib/app/pixelpatrol.jsa. The launcher maps
+# that file at startup instead of loading, verifying and parsing the same classes again.
+# An archive only fits the exact jar paths and timestamps it was made from: the .deb runs this script
+# after installing (postinst). Run it again by hand after moving or patching the app.
+#
+# Usage: cds-archive.sh [app home, default /opt/pixelpatrol]
+
+set -e
+
+APP_NAME="pixelpatrol"
+APP_HOME="$(cd "${1:-/opt/$APP_NAME}" && pwd)"
+APP_DIR="$APP_HOME/lib/app"
+JAVA="$APP_HOME/lib/runtime/bin/java"
+CFG="$APP_DIR/$APP_NAME.cfg"
+ARCHIVE="$APP_DIR/$APP_NAME.jsa"
+
+# 1. SAME CLASSPATH AND OPTIONS AS THE LAUNCHER (read from its .cfg)
+CLASSPATH=$(grep '^app.classpath=' "$CFG" | cut -d= -f2- | sed "s|\$APPDIR|$APP_DIR|" | paste -sd:)
+MAIN_CLASS=$(grep '^app.mainclass=' "$CFG" | cut -d= -f2-)
+OPTIONS=$(grep '^java-options=' "$CFG" | cut -d= -f2- | grep -v 'SharedArchiveFile\|-Xlog:cds' | sed "s|\$APPDIR|$APP_DIR|")
+
+# 2. TRAINING RUN
+# A scratch user.home: the run creates a database and must not touch anybody's real one.
+# Hibernate boots in the foreground here, so its classes are loaded before the context exits.
+TRAINING_HOME=$(mktemp -d)
+trap 'rm -rf "$TRAINING_HOME"' EXIT
+rm -f "$ARCHIVE"
+
+"$JAVA" -XX:ArchiveClassesAtExit="$ARCHIVE" \
+  -Dspring.context.exit=onRefresh \
+  -Dspring.data.jpa.repositories.bootstrap-mode=default \
+  -Duser.home="$TRAINING_HOME" \
+  $OPTIONS \
+  -cp "$CLASSPATH" \
+  "$MAIN_CLASS" > /dev/null 2>&1 || true
+
+# 3. CHECK: -Xshare:on refuses to start unless the archive maps
+if [ -f "$ARCHIVE" ] && "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" -Xshare:on \
+     -Dspring.context.exit=onRefresh \
+     -Duser.home="$TRAINING_HOME" \
+     $OPTIONS \
+     -cp "$CLASSPATH" \
+     "$MAIN_CLASS" > /dev/null 2>&1; then
+    echo "AppCDS archive created: $ARCHIVE ($(du -h "$ARCHIVE" | cut -f1))"
+else
+    rm -f "$ARCHIVE"
+    echo "AppCDS archive could not be created, $APP_NAME starts without it" >&2
+    exit 1
+fi
@@ -4,8 +4,13 @@
 APP_NAME="pixelpatrol"
 APP_VERSION="1.2.5"
 MAIN_JAR="pixelpatrol.jar"
+MAIN_CLASS="com.example.pixelpatrol.PixelPatrolApplication"
 INPUT_DIR="target"
+APP_DIR="target/app"          # Extracted jar: what goes into the package
+RUNTIME_DIR="target/runtime"
 OUTPUT_DIR="dist"
+CHECKPOINT_DIR="$(pwd)/dist/crac"
+CRAC="${CRAC:-false}"         # CRAC=true ./scripts/package-deb.sh: also take a CRaC checkpoint (CRaC JDK only)
 BROWSER_SOURCE="browsers_dist" # Where we keep the offline browser safely
 
 # Metadata for App Store
@@ -21,44 +26,118 @@ LINUX_DEPS="xdg-utils, libavif16, libnss3, libatk1.0-0, libatk-bridge2.0-0, libc
 echo "Starting Professional Build Process..."
 
 # 2. CHECK FOR BROWSER
-if [ ! -d "$BROWSER_SOURCE" ]; then
-    echo "Offline Browser not found!"
-    echo "Downloading Chromium to $BROWSER_SOURCE..."
+# Chromium, Firefox and WebKit: projects pick theirs in the capture matrix
+if [ ! -d "$BROWSER_SOURCE" ] || ! ls -d $BROWSER_SOURCE/firefox-* $BROWSER_SOURCE/webkit-* >/dev/null 2>&1; then
+    echo "Offline Browsers not found!"
+    echo "Downloading Chromium, Firefox and WebKit to $BROWSER_SOURCE..."
     mkdir -p $BROWSER_SOURCE
 
     # Download purely to our local folder
     export PLAYWRIGHT_BROWSERS_PATH=$(pwd)/$BROWSER_SOURCE
-    mvn exec:java -e -Dexec.mainClass=com.microsoft.playwright.CLI -Dexec.args="install chromium"
+    mvn exec:java -e -Dexec.mainClass=com.microsoft.playwright.CLI -Dexec.args="install chromium firefox webkit"
 fi
 
 # 3. BUILD JAR (Clean will wipe target, but browsers_dist is safe)
 echo "Building Spring Boot JAR..."
-mvn clean package -DskipTests
+if [ "$CRAC" = "true" ]; then
+    mvn clean package -DskipTests -P crac
+else
+    mvn clean package -DskipTests
+fi
+
+# 4. EXTRACT THE JAR (app jar + lib/ of plain jars)
+# Classes inside the nested jars of a fat jar can't go into a CDS archive, plain jars on the classpath can
+echo "Extracting JAR for class data sharing..."
+$JAVA_HOME/bin/java -Djarmode=tools -jar $INPUT_DIR/$MAIN_JAR extract --destination $APP_DIR
 
-# 4. COPY BROWSER TO TARGET (So jpackage includes it)
+# 5. COPY BROWSER TO TARGET (So jpackage includes it)
 echo "Bundling Chromium into package..."
-# We copy it into 'target/browsers'
-cp -r $BROWSER_SOURCE $INPUT_DIR/browsers
+cp -r $BROWSER_SOURCE $APP_DIR/browsers
+# The installer runs it to create the AppCDS archive (see step 8)
+cp scripts/cds-archive.sh $APP_DIR/
+
+# 6. BUILD THE RUNTIME
+# Same modules jpackage would pick, but with the JDK's base CDS archive (the app's archive is layered
+# on top of it) and bin/java, which the archive and checkpoint steps run the app with
+echo "Building Java runtime..."
+rm -rf $RUNTIME_DIR
+$JAVA_HOME/bin/jlink \
+  --module-path $JAVA_HOME/jmods \
+  --add-modules ALL-MODULE-PATH \
+  --strip-debug \
+  --no-man-pages \
+  --no-header-files \
+  --generate-cds-archive \
+  --output $RUNTIME_DIR
 
-# 5. CREATE INSTALLER
+# 7. CREATE APP IMAGE
+# SharedArchiveFile: the AppCDS archive, once the installer made it. A missing or outdated one is
+# skipped without a word (-Xlog:cds=off) and the app just starts the normal way.
+echo "Creating application image..."
+rm -rf $OUTPUT_DIR/$APP_NAME
+$JAVA_HOME/bin/jpackage \
+  --type app-image \
+  --input $APP_DIR \
+  --runtime-image $RUNTIME_DIR \
+  --name $APP_NAME \
+  --main-jar $MAIN_JAR \
+  --main-class $MAIN_CLASS \
+  --app-version $APP_VERSION \
+  --icon src/main/resources/icon.png \
+  --dest $OUTPUT_DIR \
+  --vendor "$VENDOR" \
+  --copyright "$COPYRIGHT" \
+  --description "$DESCRIPTION" \
+  --java-options "-Djava.awt.headless=false" \
+  --java-options "--add-modules=jdk.incubator.vector" \
+  --java-options "-Dspring.profiles.active=prod" \
+  --java-options "-XX:SharedArchiveFile=\$APPDIR/$APP_NAME.jsa" \
+  --java-options "-Xlog:cds=off,cds+dynamic=off"
+
+# 8. APPCDS ARCHIVE
+# An archive only maps for the jar paths and timestamps it was dumped from, which the installation
+# changes: the .deb makes it after installing (scripts/deb/postinst). Here we only check that the
+# training run works with this build, so a broken one fails the build instead of every install.
+echo "Checking AppCDS archive..."
+$OUTPUT_DIR/$APP_NAME/lib/app/cds-archive.sh $OUTPUT_DIR/$APP_NAME || { echo "AppCDS training run failed"; exit 1; }
+rm -f $OUTPUT_DIR/$APP_NAME/lib/app/$APP_NAME.jsa
+
+# 9. CRAC CHECKPOINT (optional: CRAC=true with a CRaC JDK as JAVA_HOME, e.g. Azul Zulu CRaC)
+# Snapshot of the started JVM + Spring context (taken before the web server and any browser start),
+# restored in milliseconds. A checkpoint holds the whole process, paths and user.home included, and
+# CRIU needs extra privileges: it is taken for THIS machine and user from the app image, not shipped.
+if [ "$CRAC" = "true" ]; then
+    echo "Taking CRaC checkpoint..."
+    IMAGE_HOME="$(cd $OUTPUT_DIR/$APP_NAME && pwd)"
+    rm -rf $CHECKPOINT_DIR
+    $IMAGE_HOME/lib/runtime/bin/java \
+      -XX:CRaCCheckpointTo=$CHECKPOINT_DIR \
+      -Dspring.context.checkpoint=onRefresh \
+      -Djava.awt.headless=false \
+      --add-modules=jdk.incubator.vector \
+      -Dspring.profiles.active=prod \
+      -cp "$IMAGE_HOME/lib/app/$MAIN_JAR" \
+      $MAIN_CLASS
+    echo "CRaC checkpoint: $CHECKPOINT_DIR (start: $IMAGE_HOME/lib/runtime/bin/java -XX:CRaCRestoreFrom=$CHECKPOINT_DIR)"
+fi
+
+# 10. CREATE INSTALLER
+# scripts/deb: the default jpackage maintainer scripts plus creating / removing the AppCDS archive
 echo "Creating .deb installer with Metadata..."
 $JAVA_HOME/bin/jpackage \
   --type deb \
-  --input $INPUT_DIR \
+  --app-image $OUTPUT_DIR/$APP_NAME \
   --name $APP_NAME \
-  --main-jar $MAIN_JAR \
-  --main-class org.springframework.boot.loader.launch.JarLauncher \
   --app-version $APP_VERSION \
   --icon src/main/resources/icon.png \
   --dest $OUTPUT_DIR \
+  --resource-dir scripts/deb \
   --description "$DESCRIPTION" \
   --vendor "$VENDOR" \
   --copyright "$COPYRIGHT" \
   --license-file "$LICENSE_FILE" \
   --linux-package-deps "$LINUX_DEPS" \
   --linux-shortcut \
-  --linux-menu-group "Development" \
-  --java-options "-Djava.awt.headless=false" \
-  --java-options "-Dspring.profiles.active=prod"
+  --linux-menu-group "Development"
 
 echo "OFFLINE Installer Created: $OUTPUT_DIR/${APP_NAME}_${APP_VERSION}_amd64.deb"
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.pixelpatrol.benchmarks;
+
+import com.example.pixelpatrol.service.ArtifactStore;
+import com.example.pixelpatrol.service.ComparisonService;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * COMPARISON
+ * ComparisonService.compareAndGetDiff end to end (hash, decode, tile hashes, diff, diff artifact) with
+ * the verdict cache switched off. The tile store stays on: after the first call the tiles of both
+ * images are known, as they are in production once a page has been captured.
+ * - IDENTICAL: same pixels, different bytes (PngStripWriter vs ImageIO), so it is decoded, not just hashed
+ * - SLIGHTLY_DIFFERENT: ~1% of a 1920x3000 page changed
+ * - SIZE_MISMATCH: the production page is 200px taller
+ * - VERY_TALL: 1920x20000, above streaming-min-height, compared strip by strip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComparisonBenchmark {
+
+    @Param({"IDENTICAL", "SLIGHTLY_DIFFERENT", "SIZE_MISMATCH", "VERY_TALL"})
+    public String scenario;
+
+    private Path home;
+    private ComparisonService comparison;
+    private Path staging;
+    private Path prod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Fixtures.isolatedHome();
+        comparison = new ComparisonService(Fixtures.noCache(), new ArtifactStore(), Fixtures.metrics(), 0, 256, 8000, 1024);
+
+        Path dir = home.resolve("fixtures");
+        dir.toFile().mkdirs();
+        staging = dir.resolve("staging.png");
+        prod = dir.resolve("prod.png");
+        switch (scenario) {
+            case "IDENTICAL" -> {
+                BufferedImage page = Fixtures.page(1920, 3000, 1);
+                Fixtures.writeStrips(page, staging);
+                Fixtures.writePng(page, prod);
+            }
+            case "SLIGHTLY_DIFFERENT" -> {
+                BufferedImage page = Fixtures.page(1920, 3000, 2);
+                Fixtures.writePng(Fixtures.changed(page, 2), staging);
+                Fixtures.writePng(page, prod);
+            }
+            case "SIZE_MISMATCH" -> {
+                Fixtures.writePng(Fixtures.page(1920, 3200, 3), staging);
+                Fixtures.writePng(Fixtures.page(1920, 3000, 3), prod);
+            }
+            case "VERY_TALL" -> {
+                BufferedImage page = Fixtures.page(1920, 20000, 4);
+                Fixtures.writePng(Fixtures.changed(page, 4), staging);
+                Fixtures.writePng(page, prod);
+            }
+            default -> throw new IllegalArgumentException(scenario);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        comparison.shutdown();
+        Fixtures.deleteTree(home);
+    }
+
+    @Benchmark
+    public ComparisonService.DiffResult compareAndGetDiff() {
+        return comparison.compareAndGetDiff(staging, prod);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.pixelpatrol.benchmarks;
+
+import com.example.pixelpatrol.repository.ComparisonCacheRepository;
+import com.example.pixelpatrol.service.PipelineMetrics;
+import com.example.pixelpatrol.service.PngStripWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * BENCHMARK FIXTURES
+ * Generated "screenshots" (header, text rows, image cards), the same for the same seed, so the
+ * benchmarks need neither a browser nor the network. Services under test write below user.home
+ * (store, tiles, thumbnails, reports): every benchmark points it at a throwaway folder first.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * A fresh user.home for this fork. Call before constructing any service.
+     */
+    static Path isolatedHome() throws IOException {
+        Path home = Files.createTempDirectory("pixelpatrol-jmh-");
+        System.setProperty("user.home", home.toString());
+        return home;
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Never hits, never stores: every compare runs the real decode + diff.
+     */
+    static ComparisonCacheRepository noCache() {
+        return (ComparisonCacheRepository) Proxy.newProxyInstance(Fixtures.class.getClassLoader(),
+                new Class<?>[]{ComparisonCacheRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.empty();
+                    case "save" -> args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "noCache";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // Meters are recorded as in production (an in-memory registry instead of Prometheus)
+    static PipelineMetrics metrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry());
+    }
+
+    static BufferedImage page(int width, int height, long seed) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setColor(new Color(0x1F2937));
+            g.fillRect(0, 0, width, 72);
+
+            int y = 120;
+            while (y < height - 40) {
+                if (random.nextInt(6) == 0) {
+                    // Image card: a gradient, like a photo or an illustration
+                    int cardHeight = Math.min(160 + random.nextInt(240), height - 40 - y);
+                    int hue = random.nextInt(0xFFFFFF);
+                    for (int row = 0; row < cardHeight; row += 4) {
+                        g.setColor(new Color((hue + row * 0x010203) & 0xFFFFFF));
+                        g.fillRect(80, y + row, width / 2, 4);
+                    }
+                    y += cardHeight + 32;
+                } else {
+                    // Text line: dark "words" of random length
+                    g.setColor(new Color(0x374151));
+                    int x = 80;
+                    while (x < width - 200) {
+                        int word = 20 + random.nextInt(90);
+                        g.fillRect(x, y, word, 12);
+                        x += word + 10;
+                    }
+                    y += 28;
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    /**
+     * The same page after a small release: a recoloured button and a shifted text line (~1% of the pixels).
+     */
+    static BufferedImage changed(BufferedImage page, long seed) {
+        BufferedImage copy = new BufferedImage(page.getWidth(), page.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        Graphics2D g = copy.createGraphics();
+        try {
+            g.drawImage(page, 0, 0, null);
+            g.setColor(new Color(0x2563EB));
+            g.fillRect(page.getWidth() - 320, 16, 200, 40);
+            int y = 120 + random.nextInt(Math.max(1, page.getHeight() / 2));
+            g.copyArea(80, y, page.getWidth() - 280, 28, 6, 0);
+        } finally {
+            g.dispose();
+        }
+        return copy;
+    }
+
+    static Path writePng(BufferedImage img, Path file) throws IOException {
+        ImageIO.write(img, "png", file.toFile());
+        return file;
+    }
+
+    // Same pixels as writePng, different bytes (and a lot faster for big fixture sets)
+    static Path writeStrips(BufferedImage img, Path file) throws IOException {
+        int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+        try (PngStripWriter writer = new PngStripWriter(file, img.getWidth(), img.getHeight())) {
+            writer.writeRows(pixels, 0, img.getHeight());
+        }
+        return file;
+    }
+}
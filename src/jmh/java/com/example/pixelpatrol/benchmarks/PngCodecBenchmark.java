@@ -0,0 +1,85 @@
+package com.example.pixelpatrol.benchmarks;
+
+import com.example.pixelpatrol.service.PngStripWriter;
+import com.example.pixelpatrol.service.StripReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG DECODE / ENCODE
+ * Our strip codec (PngStripReader / PngStripWriter, 1024-row strips like the streaming compare)
+ * against ImageIO on the same screenshot. Encoders write to a null stream, so disk speed is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngCodecBenchmark {
+
+    private static final int STRIP_ROWS = 1024;
+
+    @Param({"1920x1080", "1920x12000"})
+    public String size;
+
+    private Path home;
+    private Path file;
+    private BufferedImage image;
+    private int[] pixels;
+    private int[] strip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Fixtures.isolatedHome();
+        int x = size.indexOf('x');
+        int width = Integer.parseInt(size.substring(0, x));
+        int height = Integer.parseInt(size.substring(x + 1));
+        image = Fixtures.page(width, height, 7);
+        pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        strip = new int[width * STRIP_ROWS];
+        file = Fixtures.writePng(image, home.resolve("page.png"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteTree(home);
+    }
+
+    @Benchmark
+    public BufferedImage decodeImageIo() throws IOException {
+        return ImageIO.read(file.toFile());
+    }
+
+    @Benchmark
+    public void decodeStrips(Blackhole blackhole) throws Exception {
+        try (StripReader reader = StripReader.open(file)) {
+            for (int y = 0; y < reader.height(); y += STRIP_ROWS) {
+                reader.readRows(strip, 0, Math.min(STRIP_ROWS, reader.height() - y));
+                blackhole.consume(strip);
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodeImageIo() throws IOException {
+        ImageIO.write(image, "png", OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void encodeStrips() throws IOException {
+        int width = image.getWidth(), height = image.getHeight();
+        try (PngStripWriter writer = new PngStripWriter(OutputStream.nullOutputStream(), width, height)) {
+            for (int y = 0; y < height; y += STRIP_ROWS) {
+                writer.writeRows(pixels, y * width, Math.min(STRIP_ROWS, height - y));
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.pixelpatrol.benchmarks;
+
+import com.example.pixelpatrol.service.ArtifactStore;
+import com.example.pixelpatrol.service.ComparisonService;
+import com.example.pixelpatrol.service.PipelineMetrics;
+import com.example.pixelpatrol.service.ReportService;
+import com.example.pixelpatrol.service.ThumbnailService;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BATCH REPORT
+ * ReportService.generateBatchPdf for a batch of 10 / 100 / 500 projects, one in five of them failed
+ * with a real diff artifact. Every project has its own screenshots in the store, like a real run.
+ * The finished PDF is deleted after each call (an existing report is otherwise just served again);
+ * with coldThumbnails every call also starts without cached thumbnails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int projects;
+
+    @Param({"false", "true"})
+    public boolean coldThumbnails;
+
+    private Path home;
+    private ComparisonService comparison;
+    private ThumbnailService thumbnails;
+    private ReportService reports;
+    private List<ReportService.BatchResult> results;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Fixtures.isolatedHome();
+        ArtifactStore store = new ArtifactStore();
+        PipelineMetrics metrics = Fixtures.metrics();
+        comparison = new ComparisonService(Fixtures.noCache(), store, metrics, 0, 256, 8000, 1024);
+        thumbnails = new ThumbnailService(store);
+        reports = new ReportService(thumbnails, metrics, 0);
+
+        results = new ArrayList<>(projects);
+        for (int i = 0; i < projects; i++) {
+            BufferedImage page = Fixtures.page(1920, 2400, i);
+            Path prod = store.put(Fixtures.writeStrips(page, store.newTempFile(".png")), ".png");
+            if (i % 5 != 0) {
+                // Passed: staging is byte for byte the production screenshot
+                results.add(new ReportService.BatchResult((long) i, "Project " + i, prod, prod, null, true, 0f));
+                continue;
+            }
+            Path staging = store.put(Fixtures.writeStrips(Fixtures.changed(page, i), store.newTempFile(".png")), ".png");
+            ComparisonService.DiffResult diff = comparison.compareAndGetDiff(staging, prod);
+            results.add(new ReportService.BatchResult((long) i, "Project " + i, staging, prod, diff.diffPath, diff.passed, diff.diffPercent));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void dropThumbnails() {
+        if (coldThumbnails) {
+            thumbnails.prune(Set.of(), Long.MAX_VALUE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reports.shutdown();
+        comparison.shutdown();
+        Fixtures.deleteTree(home);
+    }
+
+    @Benchmark
+    public String generateBatchPdf() throws IOException {
+        String filename = reports.generateBatchPdf(results);
+        Path report = filename != null ? reports.reportFile(filename) : null;
+        if (report == null) throw new IllegalStateException("Report was not written");
+        Files.delete(report);
+        return filename;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.pixelpatrol;
 
+import com.example.pixelpatrol.cli.RunCommand;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import java.awt.Desktop;
@@ -7,6 +8,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.URI;
+import java.util.Arrays;
 
 @SpringBootApplication
 public class PixelPatrolApplication {
@@ -16,9 +18,18 @@ public class PixelPatrolApplication {
 	private static final String DASHBOARD_URL = "http://localhost:" + PORT;
 
 	public static void main(String[] args) {
+		// CLI mode ("pixelpatrol run ..."): test, write results, exit. No web server, no browser window,
+		// and it may run next to an open dashboard
+		if (args.length > 0 && RunCommand.NAME.equals(args[0])) {
+			ensureStorageExists();
+			System.exit(RunCommand.launch(Arrays.copyOfRange(args, 1, args.length)));
+			return;
+		}
+
 		// 2. Check if the App is already running
 		// If it is, we just open the browser and exit the new process.
-		if (isAppRunning(PORT)) {
+		// (Not for the packaging runs that stop before the server starts: AppCDS training, CRaC checkpoint)
+		if (!isStartupSnapshotRun() && isAppRunning(PORT)) {
 			System.out.println("⚠️ App is already running on port " + PORT + ". Opening Dashboard...");
 			openBrowser(DASHBOARD_URL);
 			System.exit(0); // Stop this new instance so we don't crash or run duplicates
@@ -47,6 +58,14 @@ public class PixelPatrolApplication {
 		}
 	}
 
+	/**
+	 * True when Spring is told to exit or checkpoint once the context is refreshed (scripts/cds-archive.sh,
+	 * scripts/package-deb.sh): such a run never listens on the port.
+	 */
+	private static boolean isStartupSnapshotRun() {
+		return System.getProperty("spring.context.exit") != null || System.getProperty("spring.context.checkpoint") != null;
+	}
+
 	/**
 	 * Creates the hidden configuration folder ~/.pixelpatrol if it doesn't exist.
 	 */
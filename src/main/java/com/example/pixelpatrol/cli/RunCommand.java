@@ -0,0 +1,380 @@
+package com.example.pixelpatrol.cli;
+
+import com.example.pixelpatrol.PixelPatrolApplication;
+import com.example.pixelpatrol.model.Collection;
+import com.example.pixelpatrol.model.Project;
+import com.example.pixelpatrol.repository.CollectionRepository;
+import com.example.pixelpatrol.repository.ProjectRepository;
+import com.example.pixelpatrol.service.CriticalPath;
+import com.example.pixelpatrol.service.PlaywrightService;
+import com.example.pixelpatrol.service.RunService;
+import com.example.pixelpatrol.service.Trace;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnNotWebApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * CLI RUNNER
+ * "pixelpatrol run --collection Checkout --parallel 8 --junit out.xml" for CI agents: tests the projects
+ * with the same engine as the dashboard (RunService), writes JUnit XML and/or JSON, and exits with
+ * 0 (all passed), 1 (visual differences), 2 (a page could not be tested) or 64 (bad arguments).
+ * Spring starts without a web server, with lazy beans (only what a run needs is created) and without
+ * the desktop integration (AppLauncher, port check, browser window).
+ */
+@Component
+@ConditionalOnNotWebApplication
+public class RunCommand {
+
+    public static final String NAME = "run";
+
+    public static final int EXIT_PASSED = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_ERROR = 2;
+    public static final int EXIT_USAGE = 64;
+
+    private static final String USAGE = """
+            Usage: pixelpatrol run (--collection <id|name> | --project <id|name>... | --all) [options]
+
+              --collection <id|name>  Test every project of this collection
+              --project <id|name>     Test this project (repeatable)
+              --all                   Test every project
+              --parallel <n>          Browser workers, and projects tested at once (default: CPU cores, max 8)
+              --junit <file>          Write JUnit XML (one test case per project and browser/viewport)
+              --json <file>           Write the results, span trees and critical path as JSON
+              --<property>=<value>    Any application property, e.g. --spring.datasource.url=jdbc:sqlite:/ci/data.db
+            """;
+
+    private final RunService runService;
+    private final PlaywrightService playwrightService;
+    private final ProjectRepository projectRepository;
+    private final CollectionRepository collectionRepository;
+    private final ObjectMapper objectMapper;
+
+    public RunCommand(RunService runService, PlaywrightService playwrightService, ProjectRepository projectRepository,
+                      CollectionRepository collectionRepository, ObjectMapper objectMapper) {
+        this.runService = runService;
+        this.playwrightService = playwrightService;
+        this.projectRepository = projectRepository;
+        this.collectionRepository = collectionRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    // --- ARGUMENTS ---
+
+    public static final class Options {
+        public String collection;
+        public final List<String> projects = new ArrayList<>();
+        public boolean all;
+        public Integer parallel;
+        public Path junit;
+        public Path json;
+        // Application properties, passed to Spring as command line arguments (they beat application.properties)
+        public final Map<String, String> properties = new LinkedHashMap<>();
+
+        public static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+                String inline = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : null;
+                switch (name) {
+                    case "--collection" -> o.collection = inline != null ? inline : value(args, ++i, name);
+                    case "--project" -> o.projects.add(inline != null ? inline : value(args, ++i, name));
+                    case "--all" -> o.all = true;
+                    case "--parallel" -> o.parallel = positive(inline != null ? inline : value(args, ++i, name), name);
+                    case "--junit" -> o.junit = Path.of(inline != null ? inline : value(args, ++i, name));
+                    case "--json" -> o.json = Path.of(inline != null ? inline : value(args, ++i, name));
+                    default -> {
+                        if (!arg.startsWith("--") || inline == null) throw new IllegalArgumentException("Unknown argument: " + arg);
+                        o.properties.put(name.substring(2), inline);
+                    }
+                }
+            }
+            int targets = (o.collection != null ? 1 : 0) + (o.projects.isEmpty() ? 0 : 1) + (o.all ? 1 : 0);
+            if (targets != 1) {
+                throw new IllegalArgumentException("Choose exactly one of --collection, --project or --all");
+            }
+            return o;
+        }
+
+        private static String value(String[] args, int i, String name) {
+            if (i >= args.length) throw new IllegalArgumentException(name + " needs a value");
+            return args[i];
+        }
+
+        private static int positive(String value, String name) {
+            try {
+                int n = Integer.parseInt(value);
+                if (n > 0) return n;
+            } catch (NumberFormatException ignored) {
+            }
+            throw new IllegalArgumentException(name + " must be a positive number: " + value);
+        }
+
+        String[] springArgs() {
+            Map<String, String> props = new LinkedHashMap<>();
+            props.put("spring.main.web-application-type", "none");
+            props.put("spring.main.lazy-initialization", "true");
+            props.put("spring.main.banner-mode", "off");
+            props.put("logging.level.root", "WARN");
+            props.put("pixelpatrol.capture.prewarm", "false");
+            if (parallel != null) {
+                props.put("pixelpatrol.capture.workers", parallel.toString());
+                props.put("pixelpatrol.runs.concurrency", parallel.toString());
+            }
+            props.putAll(properties);
+            return props.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+        }
+    }
+
+    /**
+     * Entry point for "pixelpatrol run ...": boots the engine, runs, returns the exit code.
+     */
+    public static int launch(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ " + e.getMessage());
+            System.err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        ConfigurableApplicationContext context = SpringApplication.run(PixelPatrolApplication.class, options.springArgs());
+        int[] code = new int[1];
+        try {
+            code[0] = context.getBean(RunCommand.class).run(options);
+        } catch (Exception e) {
+            System.err.println("❌ Run failed: " + e.getMessage());
+            code[0] = EXIT_ERROR;
+        }
+        // Closes the browser workers and flushes history before the JVM goes away
+        return SpringApplication.exit(context, () -> code[0]);
+    }
+
+    // --- RUN ---
+
+    public int run(Options options) throws IOException, InterruptedException {
+        // 1. Resolve what to test
+        String suite;
+        Long collectionId = null;
+        List<Project> projects;
+        if (options.collection != null) {
+            Collection collection = findCollection(options.collection);
+            if (collection == null) {
+                System.err.println("❌ Collection not found: " + options.collection);
+                return EXIT_USAGE;
+            }
+            suite = collection.getName();
+            collectionId = collection.getId();
+            projects = projectRepository.findByCollectionId(collectionId);
+        } else if (options.all) {
+            suite = "All projects";
+            projects = projectRepository.findAll();
+        } else {
+            suite = "Projects";
+            projects = new ArrayList<>();
+            for (String ref : options.projects) {
+                Project project = findProject(ref);
+                if (project == null) {
+                    System.err.println("❌ Project not found: " + ref);
+                    return EXIT_USAGE;
+                }
+                projects.add(project);
+            }
+        }
+        if (projects.isEmpty()) {
+            System.err.println("❌ Nothing to test: " + suite + " has no projects");
+            return EXIT_USAGE;
+        }
+
+        // 2. Queue them like a dashboard run, print every project as it finishes
+        System.out.println("🚀 Testing " + projects.size() + " project(s) of " + suite + " on "
+                + playwrightService.getWorkerCount() + " browser workers...");
+        LocalDateTime startedAt = LocalDateTime.now();
+        RunService.RunJob job = runService.submit(collectionId, projects);
+        CountDownLatch finished = new CountDownLatch(1);
+        job.subscribe(current -> current.status, status -> {
+            if ("COMPLETED".equals(status)) finished.countDown();
+        }, event -> {
+            if ("done".equals(event.type())) print(event.result(), event.completed(), event.total());
+            if ("completed".equals(event.type())) finished.countDown();
+        }, finished::countDown);
+        finished.await();
+        // Only if the progress lines fell too far behind and were dropped: wait for the rest quietly
+        while (!"COMPLETED".equals(job.status)) {
+            Thread.sleep(200);
+        }
+
+        // 3. Reports and summary
+        List<RunService.ProjectResult> results = job.getResults();
+        Map<String, Object> timeline = CriticalPath.ofResults(results);
+        if (options.junit != null) writeJunit(options.junit, suite, startedAt, results);
+        if (options.json != null) writeJson(options.json, job.runId, suite, results, timeline);
+
+        long failed = results.stream().filter(r -> "FAIL".equals(r.status)).count();
+        long errors = results.stream().filter(r -> "ERROR".equals(r.status)).count();
+        System.out.printf("%s %d passed, %d failed, %d errors in %.1f s (run %s)%n",
+                failed + errors == 0 ? "✅" : "❌", results.size() - failed - errors, failed, errors,
+                Duration.between(startedAt, LocalDateTime.now()).toMillis() / 1000.0, job.runId);
+        printCriticalPath(timeline, results);
+
+        if (errors > 0) return EXIT_ERROR;
+        return failed > 0 ? EXIT_FAILED : EXIT_PASSED;
+    }
+
+    private Collection findCollection(String ref) {
+        if (ref.chars().allMatch(Character::isDigit)) {
+            return collectionRepository.findById(Long.parseLong(ref)).orElse(null);
+        }
+        return collectionRepository.findAll().stream().filter(c -> ref.equalsIgnoreCase(c.getName())).findFirst().orElse(null);
+    }
+
+    private Project findProject(String ref) {
+        if (ref.chars().allMatch(Character::isDigit)) {
+            return projectRepository.findById(Long.parseLong(ref)).orElse(null);
+        }
+        return projectRepository.findAll().stream().filter(p -> ref.equalsIgnoreCase(p.getName())).findFirst().orElse(null);
+    }
+
+    private static void print(RunService.ProjectResult r, int completed, int total) {
+        String icon = switch (r.status) {
+            case "PASS" -> "✅";
+            case "FAIL" -> "❌";
+            default -> "⚠️";
+        };
+        String detail = "ERROR".equals(r.status) ? Trace.summary(r.message) : String.format("%.2f%% diff", r.diffPercent);
+        System.out.printf("[%d/%d] %s %s: %s (%.1f s)%n", completed, total, icon, r.projectName, detail, seconds(r));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printCriticalPath(Map<String, Object> timeline, List<RunService.ProjectResult> results) {
+        List<Long> chain = (List<Long>) timeline.get("criticalPath");
+        if (chain.size() < 2 && results.size() < 2) return;
+        Map<Long, RunService.ProjectResult> byId = new HashMap<>();
+        results.forEach(r -> byId.put(r.projectId, r));
+        StringJoiner path = new StringJoiner(" → ");
+        for (Long id : chain) {
+            RunService.ProjectResult r = byId.get(id);
+            path.add(String.format("%s (%.1f s)", r.projectName, seconds(r)));
+        }
+        System.out.println("⏱ Critical path: " + path);
+    }
+
+    private static double seconds(RunService.ProjectResult r) {
+        if (r.startedAt == null || r.finishedAt == null) return 0;
+        return Duration.between(r.startedAt, r.finishedAt).toMillis() / 1000.0;
+    }
+
+    // --- OUTPUT ---
+
+    /**
+     * One test case per project, or per browser/viewport of a capture matrix; a visual difference is a
+     * failure, a page that could not be tested an error. Artifact paths go into the failure text.
+     */
+    static void writeJunit(Path file, String suite, LocalDateTime startedAt, List<RunService.ProjectResult> results) throws IOException {
+        List<RunService.ProjectResult> cases = new ArrayList<>();
+        for (RunService.ProjectResult r : results) {
+            if (r.variants != null) cases.addAll(r.variants);
+            else cases.add(r);
+        }
+        long failures = cases.stream().filter(r -> "FAIL".equals(r.status)).count();
+        long errors = cases.stream().filter(r -> "ERROR".equals(r.status)).count();
+        double total = Duration.between(startedAt, LocalDateTime.now()).toMillis() / 1000.0;
+
+        createParent(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            XMLStreamWriter xml = XMLOutputFactory.newFactory().createXMLStreamWriter(out);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("testsuites");
+            xml.writeCharacters("\n  ");
+            xml.writeStartElement("testsuite");
+            xml.writeAttribute("name", suite);
+            xml.writeAttribute("tests", Integer.toString(cases.size()));
+            xml.writeAttribute("failures", Long.toString(failures));
+            xml.writeAttribute("errors", Long.toString(errors));
+            xml.writeAttribute("skipped", "0");
+            xml.writeAttribute("time", String.format(Locale.ROOT, "%.3f", total));
+            xml.writeAttribute("timestamp", startedAt.truncatedTo(ChronoUnit.SECONDS).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+
+            for (RunService.ProjectResult r : cases) {
+                xml.writeCharacters("\n    ");
+                xml.writeStartElement("testcase");
+                xml.writeAttribute("classname", "pixelpatrol." + suite);
+                xml.writeAttribute("name", r.variant != null ? r.projectName + " [" + r.variant + "]" : r.projectName);
+                // A variant's own capture + compare; a whole project (or one that failed) from start to finish
+                double time = r.variant != null ? (r.captureMillis + r.compareMillis) / 1000.0 : seconds(r);
+                xml.writeAttribute("time", String.format(Locale.ROOT, "%.3f", time));
+                if ("FAIL".equals(r.status) || "ERROR".equals(r.status)) {
+                    boolean failure = "FAIL".equals(r.status);
+                    xml.writeCharacters("\n      ");
+                    xml.writeStartElement(failure ? "failure" : "error");
+                    xml.writeAttribute("type", failure ? "VisualDifference" : "CaptureError");
+                    xml.writeAttribute("message", failure ? String.format(Locale.ROOT, "%s %.2f%% of the pixels differ", r.message, r.diffPercent)
+                            : Trace.summary(r.message));
+                    xml.writeCharacters(failure ? artifacts(r) : Objects.toString(r.message, ""));
+                    xml.writeEndElement();
+                    xml.writeCharacters("\n    ");
+                }
+                xml.writeEndElement();
+            }
+            xml.writeCharacters("\n  ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write " + file + ": " + e.getMessage(), e);
+        }
+        System.out.println("📄 JUnit report: " + file.toAbsolutePath());
+    }
+
+    private static String artifacts(RunService.ProjectResult r) {
+        return "staging: " + r.stagingPath + "\nproduction: " + r.prodPath + (r.diffPath != null ? "\ndiff: " + r.diffPath : "");
+    }
+
+    private void writeJson(Path file, String runId, String suite, List<RunService.ProjectResult> results,
+                           Map<String, Object> timeline) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("runId", runId);
+        report.put("suite", suite);
+        report.put("passed", results.stream().filter(r -> "PASS".equals(r.status)).count());
+        report.put("failed", results.stream().filter(r -> "FAIL".equals(r.status)).count());
+        report.put("errors", results.stream().filter(r -> "ERROR".equals(r.status)).count());
+        report.put("results", results);
+        report.put("timeline", timeline);
+
+        createParent(file);
+        objectMapper.writer()
+                .without(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .withDefaultPrettyPrinter()
+                .writeValue(file.toFile(), report);
+        System.out.println("📄 JSON results: " + file.toAbsolutePath());
+    }
+
+    private static void createParent(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.pixelpatrol.config;
 
 import com.example.pixelpatrol.PixelPatrolApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnWebApplication // Not for "pixelpatrol run" (CLI mode has no dashboard to open)
 public class AppLauncher {
 
     @EventListener(ApplicationReadyEvent.class)
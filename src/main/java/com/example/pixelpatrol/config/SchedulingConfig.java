@@ -0,0 +1,15 @@
+package com.example.pixelpatrol.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Background jobs (artifact store eviction, old report cleanup) belong to the long-running app.
+ * A CLI run ("pixelpatrol run") has no scheduler, so its @Scheduled beans stay lazy and are never created.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnWebApplication
+public class SchedulingConfig {
+}
@@ -4,21 +4,27 @@ import com.example.pixelpatrol.model.Collection;
 import com.example.pixelpatrol.model.Project;
 import com.example.pixelpatrol.repository.CollectionRepository;
 import com.example.pixelpatrol.repository.ProjectRepository;
+import com.example.pixelpatrol.service.HistoryService;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
+import java.util.Map;
 
 @Controller
 public class DashboardController {
 
     private final ProjectRepository projectRepository;
     private final CollectionRepository collectionRepository;
+    private final HistoryService historyService;
 
-    public DashboardController(ProjectRepository projectRepository, CollectionRepository collectionRepository) {
+    public DashboardController(ProjectRepository projectRepository, CollectionRepository collectionRepository, HistoryService historyService) {
         this.projectRepository = projectRepository;
         this.collectionRepository = collectionRepository;
+        this.historyService = historyService;
     }
 
     // 1. Show the Dashboard
@@ -32,9 +38,18 @@ public class DashboardController {
         // Fetch "Uncategorized" projects (those not in any collection)
         List<Project> looseProjects = projectRepository.findByCollectionIsNull();
 
+        // Last known status of every project, read from history (no screenshots are re-diffed)
+        List<Map<String, Object>> latestResults = historyService.latestResultPerProject().values().stream()
+                .map(r -> Map.<String, Object>of(
+                        "projectId", r.getProjectId(),
+                        "status", r.getStatus(),
+                        "diffPercent", r.getDiffPercent()))
+                .toList();
+
         // Add to UI Model
         model.addAttribute("collections", collections);
         model.addAttribute("looseProjects", looseProjects);
+        model.addAttribute("latestResults", latestResults);
         model.addAttribute("newProject", new Project()); // Empty object for the "Add New" form
 
         return "dashboard"; // Serves dashboard.html
@@ -43,6 +58,10 @@ public class DashboardController {
     // 2. Handle "Add Project" Form Submit
     @PostMapping("/project")
     public String addProject(@ModelAttribute Project project, @RequestParam(required = false) Long collectionId) {
+        // A readiness timeout of 0 would let Playwright wait forever for the page
+        if (project.getReadinessTimeoutMs() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ready timeout must be a positive number of milliseconds");
+        }
         if (collectionId != null) {
             Collection c = collectionRepository.findById(collectionId).orElse(null);
             project.setCollection(c);
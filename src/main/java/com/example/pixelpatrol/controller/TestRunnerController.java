@@ -2,106 +2,256 @@ package com.example.pixelpatrol.controller;
 
 import com.example.pixelpatrol.model.Collection;
 import com.example.pixelpatrol.model.Project;
+import com.example.pixelpatrol.model.TestResult;
+import com.example.pixelpatrol.model.TestRun;
 import com.example.pixelpatrol.repository.CollectionRepository;
 import com.example.pixelpatrol.repository.ProjectRepository;
-import com.example.pixelpatrol.service.ComparisonService;
+import com.example.pixelpatrol.service.ArtifactStore;
+import com.example.pixelpatrol.service.BaselineService;
+import com.example.pixelpatrol.service.CriticalPath;
+import com.example.pixelpatrol.service.DiffArtifact;
+import com.example.pixelpatrol.service.HistoryService;
 import com.example.pixelpatrol.service.PlaywrightService;
+import com.example.pixelpatrol.service.ReportJobService;
 import com.example.pixelpatrol.service.ReportService;
+import com.example.pixelpatrol.service.RunService;
+import com.example.pixelpatrol.service.ThumbnailService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class TestRunnerController {
 
     private final ProjectRepository projectRepository;
     private final CollectionRepository collectionRepository; // NEW: Needed for collection reports
-    private final PlaywrightService playwrightService;
-    private final ComparisonService comparisonService;
+    private final ArtifactStore artifactStore;
     private final ReportService reportService;
+    private final ReportJobService reportJobService;
+    private final RunService runService;
+    private final HistoryService historyService;
+    private final BaselineService baselineService;
+    private final ThumbnailService thumbnailService;
+    private final PlaywrightService playwrightService;
 
-    public TestRunnerController(ProjectRepository repo, CollectionRepository colRepo, PlaywrightService pw, ComparisonService cs, ReportService rs) {
+    public TestRunnerController(ProjectRepository repo, CollectionRepository colRepo, ArtifactStore store, ReportService rs,
+                                ReportJobService reportJobs, RunService runs, HistoryService history, BaselineService baselines,
+                                ThumbnailService thumbnails, PlaywrightService playwright) {
         this.projectRepository = repo;
         this.collectionRepository = colRepo;
-        this.playwrightService = pw;
-        this.comparisonService = cs;
+        this.artifactStore = store;
         this.reportService = rs;
+        this.reportJobService = reportJobs;
+        this.runService = runs;
+        this.historyService = history;
+        this.baselineService = baselines;
+        this.thumbnailService = thumbnails;
+        this.playwrightService = playwright;
     }
 
     // 1. RUN SINGLE TEST
     @PostMapping("/api/run-test/{id}")
     public ResponseEntity<?> runTest(@PathVariable Long id) {
-        try {
-            Project project = projectRepository.findById(id).orElseThrow(() -> new RuntimeException("Project not found"));
+        Project project = projectRepository.findById(id).orElse(null);
+        if (project == null) {
+            return ResponseEntity.ok(Map.of("status", "ERROR", "message", "Project not found"));
+        }
+
+        RunService.ProjectResult result = runService.runSingle(project);
+        if ("ERROR".equals(result.status)) {
+            return ResponseEntity.ok(Map.of("status", "ERROR", "message", result.message));
+        }
 
-            // A. Capture (Predictable filenames: project_{id}_staging.png)
-            Path[] images = playwrightService.captureScreenshots(id, project.getStagingUrl(), project.getProductionUrl());
+        return ResponseEntity.ok(Map.of(
+                "status", result.status,
+                "diffPercent", String.format("%.2f", result.diffPercent),
+                "message", result.message,
+                "stagingImg", result.stagingImg,
+                "prodImg", result.prodImg,
+                "reportUrl", result.reportUrl
+        ));
+    }
 
-            // B. Compare
-            ComparisonService.DiffResult result = comparisonService.compareAndGetDiff(images[0], images[1]);
+    // 1b. QUEUE A BATCH RUN (Collection or explicit list of projects)
+    // Returns a runId immediately; the work continues on the server even if the tab is closed.
+    @PostMapping("/api/runs")
+    public ResponseEntity<?> startRun(@RequestBody RunRequest request) {
+        List<Project> projects;
+        if (request.collectionId != null) {
+            Collection collection = collectionRepository.findById(request.collectionId).orElse(null);
+            if (collection == null) {
+                return ResponseEntity.badRequest().body(Map.of("message", "Collection not found"));
+            }
+            projects = collection.getProjects();
+        } else if (request.projectIds != null && !request.projectIds.isEmpty()) {
+            projects = projectRepository.findAllById(request.projectIds);
+        } else {
+            return ResponseEntity.badRequest().body(Map.of("message", "Provide a collectionId or projectIds"));
+        }
 
-            // Match only if path is null AND percentage is strictly 0
-            boolean isMatch = (result.diffPath == null && result.diffPercent == 0.0);
-            String diffFileName = isMatch ? "" : result.diffPath.getFileName().toString();
+        try {
+            RunService.RunJob job = runService.submit(request.collectionId, projects);
+            return ResponseEntity.accepted().body(Map.of(
+                    "runId", job.runId,
+                    "total", job.total,
+                    "statusUrl", "/api/runs/" + job.runId
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        }
+    }
 
-            // C. Return JSON
+    // 1c. POLL RUN PROGRESS (+ timeline of the batch with its critical path)
+    @GetMapping("/api/runs/{runId}")
+    public ResponseEntity<?> getRun(@PathVariable String runId) {
+        RunService.RunJob job = runService.getRun(runId).orElse(null);
+        if (job != null) {
+            List<RunService.ProjectResult> results = job.getResults();
             return ResponseEntity.ok(Map.of(
-                    "status", isMatch ? "PASS" : "FAIL",
-                    "diffPercent", String.format("%.2f", result.diffPercent),
-                    "message", isMatch ? "UI is Identical" : "Differences Detected!",
-                    "stagingImg", images[0].getFileName().toString(),
-                    "prodImg", images[1].getFileName().toString(),
-                    "reportUrl", "/api/generate-report/" + id + "/" + images[0].getFileName() + "/" + images[1].getFileName() + "?diff=" + diffFileName
+                    "runId", job.runId,
+                    "status", job.status,
+                    "total", job.total,
+                    "completed", job.getCompleted(),
+                    "results", results,
+                    "timeline", CriticalPath.ofResults(results)
             ));
+        }
 
+        // Older runs are no longer in memory -> read them back from the history tables
+        TestRun run = historyService.findRun(runId).orElse(null);
+        if (run == null) {
+            return ResponseEntity.notFound().build();
+        }
+        List<TestResult> results = historyService.resultsOfRun(runId);
+        return ResponseEntity.ok(Map.of(
+                "runId", run.getId(),
+                "status", run.getStatus(),
+                "total", run.getTotalProjects(),
+                "completed", results.size(),
+                "results", results,
+                "timeline", CriticalPath.ofRows(results)
+        ));
+    }
+
+    // 1c'. LIVE RUN PROGRESS (Server-Sent Events)
+    // One "snapshot" event with the current state, then queued / capturing / comparing / done per
+    // project and a final "completed". One idle connection replaces polling or per-project requests.
+    @GetMapping(path = "/api/runs/{runId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> runEvents(@PathVariable String runId) throws IOException {
+        SseEmitter emitter = new SseEmitter(TimeUnit.HOURS.toMillis(1));
+        RunService.RunJob job = runService.getRun(runId).orElse(null);
+
+        if (job == null) {
+            // Older runs are only in the history tables -> their final state, then close
+            TestRun run = historyService.findRun(runId).orElse(null);
+            if (run == null) {
+                return ResponseEntity.notFound().build();
+            }
+            List<TestResult> results = historyService.resultsOfRun(runId);
+            emitter.send(SseEmitter.event().name("snapshot").data(Map.of(
+                    "runId", run.getId(), "status", run.getStatus(), "total", run.getTotalProjects(),
+                    "completed", results.size(), "results", results)));
+            emitter.complete();
+            return ResponseEntity.ok(emitter);
+        }
+
+        // Sent from the subscription's own thread: a slow client only ever holds up itself.
+        // Dropped (too far behind) -> the stream ends and EventSource reconnects for a fresh snapshot
+        RunService.RunJob.Subscription subscription = job.subscribe(
+                snapshot -> Map.of(
+                        "runId", snapshot.runId, "status", snapshot.status, "total", snapshot.total,
+                        "completed", snapshot.getCompleted(), "phases", snapshot.getPhases(), "results", snapshot.getResults()),
+                snapshot -> {
+                    send(emitter, "snapshot", snapshot);
+                    if ("COMPLETED".equals(snapshot.get("status"))) emitter.complete();
+                },
+                event -> {
+                    send(emitter, event.type(), event);
+                    if ("completed".equals(event.type())) emitter.complete();
+                },
+                emitter::complete);
+        emitter.onCompletion(() -> job.unsubscribe(subscription));
+        emitter.onTimeout(() -> job.unsubscribe(subscription));
+        emitter.onError(e -> job.unsubscribe(subscription));
+        return ResponseEntity.ok(emitter);
+    }
+
+    private static void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Client went away -> the run drops this subscription
+        }
+    }
+
+    // 1c''. BROWSER WORKERS: captures served, errors, memory and pool load
+    @GetMapping("/api/workers/health")
+    public Map<String, Object> workerHealth() {
+        return playwrightService.getHealth();
+    }
+
+    // 1d. PROJECT HISTORY (Newest first)
+    @GetMapping("/api/projects/{id}/history")
+    public List<TestResult> projectHistory(@PathVariable Long id, @RequestParam(defaultValue = "20") int limit) {
+        return historyService.recentResults(id, Math.max(1, Math.min(limit, 500)));
+    }
+
+    // 1e. RE-BASELINE (Baseline mode: capture production again and approve it)
+    @PostMapping("/api/projects/{id}/baseline")
+    public ResponseEntity<?> rebaseline(@PathVariable Long id) {
+        Project project = projectRepository.findById(id).orElse(null);
+        if (project == null) {
+            return ResponseEntity.ok(Map.of("status", "ERROR", "message", "Project not found"));
+        }
+        try {
+            Path baseline = baselineService.rebaseline(project);
+            return ResponseEntity.ok(Map.of("status", "OK", "baselineImg", baseline.getFileName().toString()));
         } catch (RuntimeException e) {
-            System.err.println("Handled Error: " + e.getMessage());
             return ResponseEntity.ok(Map.of("status", "ERROR", "message", e.getMessage()));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.ok(Map.of("status", "ERROR", "message", "System Error"));
         }
     }
 
+    // 1f. DROP BASELINE (The next run captures a new one)
+    @DeleteMapping("/api/projects/{id}/baseline")
+    public ResponseEntity<?> clearBaseline(@PathVariable Long id) {
+        baselineService.clear(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    public static class RunRequest {
+        public Long collectionId;
+        public List<Long> projectIds;
+    }
+
     // 2. GENERATE FULL REPORT (All Projects)
+    // Rendered in the background: returns a jobId to poll at /api/reports/jobs/{jobId}
     @PostMapping("/api/generate-full-report")
     public ResponseEntity<?> generateFullReport() {
-        List<Project> projects = projectRepository.findAll();
-        List<ReportService.BatchResult> results = new ArrayList<>();
+        List<ReportService.BatchResult> results = collectBatchResults(projectRepository.findAll(), "Test not run or capture failed");
 
-        for (Project p : projects) {
-            // Check disk for existing screenshots
-            Path stagingPath = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/project_" + p.getId() + "_staging.png");
-            Path prodPath = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/project_" + p.getId() + "_prod.png");
-
-            if (Files.exists(stagingPath) && Files.exists(prodPath)) {
-                ComparisonService.DiffResult diff = comparisonService.compareAndGetDiff(stagingPath, prodPath);
-                boolean pass = (diff.diffPath == null);
+        ReportJobService.ReportJob job = reportJobService.submitBatch(results);
 
-                results.add(new ReportService.BatchResult(
-                        p.getId(), p.getName(), stagingPath, prodPath, diff.diffPath, pass, diff.diffPercent
-                ));
-            } else {
-                results.add(new ReportService.BatchResult(p.getId(), p.getName(), "Test not run or capture failed"));
-            }
-        }
-
-        String pdfFilename = reportService.generateBatchPdf(results);
-
-        return ResponseEntity.ok(Map.of(
-                "message", "Report Generated",
-                "reportUrl", "/api/reports/" + pdfFilename
-        ));
+        return ResponseEntity.accepted().body(reportJobBody(job));
     }
 
     // 3. NEW: GENERATE COLLECTION REPORT (Specific Folder Only)
@@ -110,42 +260,106 @@ public class TestRunnerController {
         Collection collection = collectionRepository.findById(id).orElseThrow(() -> new RuntimeException("Collection not found"));
         List<Project> projects = collection.getProjects(); // Only get projects in this folder
 
+        List<ReportService.BatchResult> results = collectBatchResults(projects, "Not Run");
+
+        ReportJobService.ReportJob job = reportJobService.submitBatch(results);
+
+        return ResponseEntity.accepted().body(reportJobBody(job));
+    }
+
+    // 3b. POLL REPORT JOB
+    @GetMapping("/api/reports/jobs/{jobId}")
+    public ResponseEntity<?> getReportJob(@PathVariable String jobId) {
+        return reportJobService.getJob(jobId)
+                .<ResponseEntity<?>>map(job -> ResponseEntity.ok(reportJobBody(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private Map<String, Object> reportJobBody(ReportJobService.ReportJob job) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("jobId", job.jobId);
+        body.put("status", job.status);
+        body.put("cached", job.cached);
+        body.put("statusUrl", "/api/reports/jobs/" + job.jobId);
+        if ("COMPLETED".equals(job.status)) {
+            body.put("reportUrl", "/api/reports/" + job.filename);
+        } else if ("FAILED".equals(job.status)) {
+            body.put("message", "Report generation failed, check the logs");
+        }
+        return body;
+    }
+
+    // Shared by both reports: every project's LATEST recorded result. Screenshots are
+    // immutable store objects now, so the PDF never re-captures or re-compares anything.
+    private List<ReportService.BatchResult> collectBatchResults(List<Project> projects, String notRunMessage) {
+        historyService.flush(); // Include results that are still buffered
+        Map<Long, TestResult> latest = historyService.latestResultPerProject();
         List<ReportService.BatchResult> results = new ArrayList<>();
 
         for (Project p : projects) {
-            Path stagingPath = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/project_" + p.getId() + "_staging.png");
-            Path prodPath = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/project_" + p.getId() + "_prod.png");
-
-            if (Files.exists(stagingPath) && Files.exists(prodPath)) {
-                ComparisonService.DiffResult diff = comparisonService.compareAndGetDiff(stagingPath, prodPath);
-                boolean pass = (diff.diffPath == null);
+            TestResult r = latest.get(p.getId());
+            if (r == null) {
+                results.add(new ReportService.BatchResult(p.getId(), p.getName(), notRunMessage));
+            } else if ("ERROR".equals(r.getStatus())) {
+                results.add(new ReportService.BatchResult(p.getId(), p.getName(), r.getMessage()));
+            } else if (r.getStagingPath() == null || !Files.exists(Paths.get(r.getStagingPath())) || !Files.exists(Paths.get(r.getProdPath()))) {
+                results.add(new ReportService.BatchResult(p.getId(), p.getName(), "Screenshots are no longer available"));
+            } else {
+                // A capture matrix is reported through its worst variant, named in the title
+                String name = r.getVariant() == null ? p.getName() : p.getName() + " [" + r.getVariant() + "]";
                 results.add(new ReportService.BatchResult(
-                        p.getId(), p.getName(), stagingPath, prodPath, diff.diffPath, pass, diff.diffPercent
+                        p.getId(), name, Paths.get(r.getStagingPath()), Paths.get(r.getProdPath()),
+                        r.getDiffPath() == null ? null : Paths.get(r.getDiffPath()), "PASS".equals(r.getStatus()), r.getDiffPercent()
                 ));
-            } else {
-                results.add(new ReportService.BatchResult(p.getId(), p.getName(), "Not Run"));
             }
         }
+        return results;
+    }
 
-        String pdfFilename = reportService.generateBatchPdf(results);
-
-        return ResponseEntity.ok(Map.of("reportUrl", "/api/reports/" + pdfFilename));
+    // Store objects ("<sha256>.png"), or files from before the store existed
+    private Path resolveImage(String name) {
+        Path stored = artifactStore.resolve(name);
+        return stored != null ? stored : Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/" + name);
     }
 
     // 4. SERVE IMAGES
+    // ?w=400 serves a cached thumbnail of that width (rounded up to 100px steps) instead of the full PNG.
+    // Store objects never change, so they are cached by the browser for good (immutable).
     @GetMapping("/api/images/{filename}")
-    public ResponseEntity<Resource> serveImage(@PathVariable String filename) {
+    public void serveImage(@PathVariable String filename, @RequestParam(required = false) Integer w,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
         try {
-            Path file = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/" + filename);
-            Resource resource = new UrlResource(file.toUri());
+            Path file = resolveImage(filename);
+            Path manifest = DiffArtifact.manifestForImage(file, artifactStore);
+            if (manifest == null && !Files.isRegularFile(file)) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
 
-            if (resource.exists() || resource.isReadable()) {
-                return ResponseEntity.ok().contentType(MediaType.IMAGE_PNG).body(resource);
+            // Content-addressed: the screenshot itself, or the manifest a diff overlay is composed from
+            Path source = manifest != null ? manifest : file;
+            boolean immutable = ArtifactStore.contentHash(source) != null;
+            long lastModified = Files.getLastModifiedTime(source).toMillis();
+            int width = w == null ? 0 : Math.min(Math.max((w + 99) / 100 * 100, 100), 2000);
+            String version = immutable ? ArtifactStore.contentHash(source) : Long.toHexString(lastModified) + "-" + Files.size(source);
+            String etag = "\"" + version + (manifest != null ? "-diff" : "") + (width > 0 ? "-w" + width : "") + "\"";
+            String cacheControl = immutable
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable().getHeaderValue()
+                    : CacheControl.noCache().getHeaderValue(); // Pre-store files are overwritten by every run
+
+            if (width > 0) {
+                Path thumbnail = thumbnailService.thumbnail(file, width, width * 16);
+                String type = thumbnail.toString().endsWith(".png") ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE;
+                HttpFileSender.sendFile(request, response, thumbnail, type, etag, lastModified, cacheControl);
+            } else if (manifest != null) {
+                // Diff overlays are stored as patches, composed once into a file on the first request
+                HttpFileSender.sendFile(request, response, thumbnailService.overlay(manifest), MediaType.IMAGE_PNG_VALUE,
+                        etag, lastModified, cacheControl);
             } else {
-                return ResponseEntity.notFound().build();
+                HttpFileSender.sendFile(request, response, file, MediaType.IMAGE_PNG_VALUE, etag, lastModified, cacheControl);
             }
         } catch (Exception e) {
-            return ResponseEntity.notFound().build();
+            if (!response.isCommitted()) response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
     }
 
@@ -155,22 +369,27 @@ public class TestRunnerController {
             @PathVariable Long id,
             @PathVariable String stagingName,
             @PathVariable String prodName,
-            @RequestParam(required = false) String diff) {
+            @RequestParam(required = false) String diff,
+            WebRequest request) {
 
         try {
             Project project = projectRepository.findById(id).orElseThrow();
-            Path stagingPath = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/" + stagingName);
-            Path prodPath = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/" + prodName);
+            Path stagingPath = resolveImage(stagingName);
+            Path prodPath = resolveImage(prodName);
 
-            Path diffPath = (diff != null && !diff.isEmpty())
-                    ? Paths.get(System.getProperty("user.home") + "/.pixelpatrol/screenshots/" + diff)
-                    : null;
+            Path diffPath = (diff != null && !diff.isEmpty()) ? resolveImage(diff) : null;
 
             boolean passed = (diffPath == null);
 
-            String pdfFilename = reportService.generatePdf(project.getName(), stagingPath, prodPath, diffPath, passed);
+            // One project renders in about a second; this link is opened directly, so wait for the job
+            ReportJobService.ReportJob job = reportJobService.submitProject(
+                    new ReportService.BatchResult(0L, project.getName(), stagingPath, prodPath, diffPath, passed, 0.0f));
+            String pdfFilename = job.await(2, TimeUnit.MINUTES);
+            if (pdfFilename == null) {
+                return ResponseEntity.internalServerError().build();
+            }
 
-            return downloadReport(pdfFilename);
+            return downloadReport(pdfFilename, request);
 
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -178,20 +397,29 @@ public class TestRunnerController {
     }
 
     // 6. DOWNLOAD PDF
+    // A report file never changes (its name is a fingerprint of its inputs), so the name is a strong
+    // ETag. Range requests are answered by Spring for Resource bodies, so big downloads can resume.
     @GetMapping("/api/reports/{filename}")
-    public ResponseEntity<Resource> downloadReport(@PathVariable String filename) {
+    public ResponseEntity<Resource> downloadReport(@PathVariable String filename, WebRequest request) {
         try {
-            Path file = Paths.get(System.getProperty("user.home") + "/.pixelpatrol/reports/" + filename);
-            Resource resource = new UrlResource(file.toUri());
-
-            if (resource.exists() || resource.isReadable()) {
-                return ResponseEntity.ok()
-                        .contentType(MediaType.APPLICATION_PDF)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                        .body(resource);
-            } else {
+            Path file = reportService.reportFile(filename);
+            if (file == null) {
                 return ResponseEntity.notFound().build();
             }
+
+            String etag = "\"" + filename + "\"";
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            if (request.checkNotModified(etag, lastModified)) {
+                return null; // 304, headers already set
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .cacheControl(CacheControl.maxAge(7, TimeUnit.DAYS).cachePrivate())
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                    .body(new FileSystemResource(file));
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
@@ -0,0 +1,58 @@
+package com.example.pixelpatrol.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Cached outcome of comparing two exact image files.
+ * Key = content hashes of staging + production, so the entry stays valid for as long
+ * as neither screenshot changes, no matter how many reports are generated from it.
+ */
+@Entity
+@Table(name = "comparison_cache")
+public class ComparisonCacheEntry {
+
+    @Id
+    @Column(name = "cache_key", length = 200)
+    private String cacheKey;
+
+    @Column(name = "diff_path")
+    private String diffPath; // null if match
+
+    @Column(name = "diff_percent")
+    private float diffPercent;
+
+    private Boolean passed; // Nullable: added after the table was first created
+
+    // Fingerprint of the diff file we wrote, to detect it being overwritten or deleted
+    @Column(name = "diff_size")
+    private long diffSize;
+
+    @Column(name = "diff_modified")
+    private long diffModified;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // Getters & Setters
+    public String getCacheKey() { return cacheKey; }
+    public void setCacheKey(String cacheKey) { this.cacheKey = cacheKey; }
+
+    public String getDiffPath() { return diffPath; }
+    public void setDiffPath(String diffPath) { this.diffPath = diffPath; }
+
+    public float getDiffPercent() { return diffPercent; }
+    public void setDiffPercent(float diffPercent) { this.diffPercent = diffPercent; }
+
+    public boolean isPassed() { return passed != null && passed; }
+    public void setPassed(boolean passed) { this.passed = passed; }
+
+    public long getDiffSize() { return diffSize; }
+    public void setDiffSize(long diffSize) { this.diffSize = diffSize; }
+
+    public long getDiffModified() { return diffModified; }
+    public void setDiffModified(long diffModified) { this.diffModified = diffModified; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,6 @@
+package com.example.pixelpatrol.model;
+
+public enum ComparisonMode {
+    EXACT,      // Any changed pixel is a difference
+    PERCEPTUAL  // YIQ color distance + anti-aliasing tolerance (like pixelmatch)
+}
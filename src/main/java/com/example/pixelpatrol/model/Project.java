@@ -3,6 +3,8 @@ package com.example.pixelpatrol.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
+import java.time.LocalDateTime;
+
 @Entity
 @Table(name = "projects")
 public class Project {
@@ -15,6 +17,32 @@ public class Project {
     private String stagingUrl;
     private String productionUrl;
 
+    // --- COMPARISON SETTINGS ---
+    // Wrapper types: rows created before these columns existed hold NULL -> defaults below
+    @Enumerated(EnumType.STRING)
+    private ComparisonMode comparisonMode;
+    private Double colorThreshold;        // PERCEPTUAL only: 0 (strict) .. 1 (lenient)
+    private Boolean ignoreAntialiasing;   // PERCEPTUAL only
+    private Float passThreshold;          // % of different pixels still counted as PASS
+
+    // --- BASELINE MODE ---
+    // Production is captured once and approved as the baseline; runs then only capture staging
+    private Boolean baselineMode;
+    private Integer baselineTtlHours;     // Re-capture production after this long (0 = only on request)
+    // Set by BaselineService only (no setters, so a form post can't point it at another file)
+    @JsonIgnore
+    private String baselinePath;
+    private LocalDateTime baselineCapturedAt;
+
+    // --- CAPTURE MATRIX (see CaptureMatrix) ---
+    private String browsers;              // "chromium,firefox,webkit" (empty = chromium)
+    private String viewports;             // "desktop,tablet,mobile" or "1440x900" (empty = desktop)
+
+    // --- READINESS (when a page is ready for its screenshot) ---
+    @Enumerated(EnumType.STRING)
+    private ReadinessMode readiness;
+    private String readinessValue;        // SELECTOR: CSS selector, SCRIPT: JS predicate, LAYOUT_STABLE: frames
+    private Integer readinessTimeoutMs;   // Screenshot is taken anyway after this long
 
     // --- NEW RELATIONSHIP ---
     @ManyToOne(fetch = FetchType.LAZY)
@@ -32,6 +60,34 @@ public class Project {
     public String getProductionUrl() { return productionUrl; }
     public void setProductionUrl(String productionUrl) { this.productionUrl = productionUrl; }
 
+    public ComparisonMode getComparisonMode() { return comparisonMode != null ? comparisonMode : ComparisonMode.EXACT; }
+    public void setComparisonMode(ComparisonMode comparisonMode) { this.comparisonMode = comparisonMode; }
+    public double getColorThreshold() { return colorThreshold != null ? colorThreshold : 0.1; }
+    public void setColorThreshold(double colorThreshold) { this.colorThreshold = colorThreshold; }
+    public boolean isIgnoreAntialiasing() { return ignoreAntialiasing == null || ignoreAntialiasing; }
+    public void setIgnoreAntialiasing(boolean ignoreAntialiasing) { this.ignoreAntialiasing = ignoreAntialiasing; }
+    public float getPassThreshold() { return passThreshold != null ? passThreshold : 0f; }
+    public void setPassThreshold(float passThreshold) { this.passThreshold = passThreshold; }
+
+    public boolean isBaselineMode() { return baselineMode != null && baselineMode; }
+    public void setBaselineMode(boolean baselineMode) { this.baselineMode = baselineMode; }
+    public int getBaselineTtlHours() { return baselineTtlHours != null ? baselineTtlHours : 0; }
+    public void setBaselineTtlHours(int baselineTtlHours) { this.baselineTtlHours = baselineTtlHours; }
+    public String getBaselinePath() { return baselinePath; }
+    public LocalDateTime getBaselineCapturedAt() { return baselineCapturedAt; }
+
+    public String getBrowsers() { return browsers != null && !browsers.isBlank() ? browsers : "chromium"; }
+    public void setBrowsers(String browsers) { this.browsers = browsers; }
+    public String getViewports() { return viewports != null && !viewports.isBlank() ? viewports : "desktop"; }
+    public void setViewports(String viewports) { this.viewports = viewports; }
+
+    public ReadinessMode getReadiness() { return readiness != null ? readiness : ReadinessMode.NETWORK_IDLE; }
+    public void setReadiness(ReadinessMode readiness) { this.readiness = readiness; }
+    public String getReadinessValue() { return readinessValue; }
+    public void setReadinessValue(String readinessValue) { this.readinessValue = readinessValue; }
+    public int getReadinessTimeoutMs() { return readinessTimeoutMs != null ? readinessTimeoutMs : 10000; }
+    public void setReadinessTimeoutMs(int readinessTimeoutMs) { this.readinessTimeoutMs = readinessTimeoutMs; }
+
 
     public Collection getCollection() { return collection; }
     public void setCollection(Collection collection) { this.collection = collection; }
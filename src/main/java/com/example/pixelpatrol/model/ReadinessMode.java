@@ -0,0 +1,9 @@
+package com.example.pixelpatrol.model;
+
+public enum ReadinessMode {
+    NETWORK_IDLE,  // No requests for 500 ms (slow on pages with long-polling or beacons)
+    SELECTOR,      // An element matching the CSS selector is visible
+    SCRIPT,        // A JS expression / predicate returns true
+    LAYOUT_STABLE, // No element moves or resizes for N animation frames
+    FONTS_READY    // All web fonts are loaded
+}
@@ -0,0 +1,135 @@
+package com.example.pixelpatrol.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of ONE project inside a TestRun.
+ * Column names are explicit because rows are written with batched JDBC inserts
+ * (see TestResultRepositoryImpl), not through the EntityManager.
+ */
+@Entity
+@Table(name = "test_results", indexes = {
+        @Index(name = "idx_test_results_project_started", columnList = "project_id, started_at"),
+        @Index(name = "idx_test_results_run", columnList = "run_id")
+})
+public class TestResult {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "run_id")
+    @JsonIgnore // Prevent infinite loops in JSON
+    private TestRun run;
+
+    // Plain column (not a relation) so history queries never trigger extra Project loads
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(name = "project_name")
+    private String projectName;
+
+    private String status; // PASS, FAIL, ERROR
+
+    // Browser / viewport of a capture matrix ("firefox/mobile"); NULL for the default Chromium desktop capture
+    @Column(name = "variant", length = 64)
+    private String variant;
+
+    @Column(name = "diff_percent")
+    private float diffPercent;
+
+    @Column(length = 2000)
+    private String message;
+
+    @Column(name = "staging_path")
+    private String stagingPath;
+
+    @Column(name = "prod_path")
+    private String prodPath;
+
+    @Column(name = "diff_path")
+    private String diffPath;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "capture_millis")
+    private long captureMillis;
+
+    @Column(name = "compare_millis")
+    private long compareMillis;
+
+    // Wall time of each page: navigation (retries included) + readiness wait + screenshot
+    @Column(name = "staging_capture_millis")
+    private Long stagingCaptureMillis;
+
+    @Column(name = "prod_capture_millis")
+    private Long prodCaptureMillis;
+
+    // Span tree of the project's test as JSON (see Trace), the same on every variant row of a matrix run
+    @Column(name = "trace", columnDefinition = "TEXT")
+    @JsonRawValue
+    private String trace;
+
+    // Getters & Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public TestRun getRun() { return run; }
+    public void setRun(TestRun run) { this.run = run; }
+
+    public Long getProjectId() { return projectId; }
+    public void setProjectId(Long projectId) { this.projectId = projectId; }
+
+    public String getProjectName() { return projectName; }
+    public void setProjectName(String projectName) { this.projectName = projectName; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getVariant() { return variant; }
+    public void setVariant(String variant) { this.variant = variant; }
+
+    public float getDiffPercent() { return diffPercent; }
+    public void setDiffPercent(float diffPercent) { this.diffPercent = diffPercent; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public String getStagingPath() { return stagingPath; }
+    public void setStagingPath(String stagingPath) { this.stagingPath = stagingPath; }
+
+    public String getProdPath() { return prodPath; }
+    public void setProdPath(String prodPath) { this.prodPath = prodPath; }
+
+    public String getDiffPath() { return diffPath; }
+    public void setDiffPath(String diffPath) { this.diffPath = diffPath; }
+
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+
+    public long getCaptureMillis() { return captureMillis; }
+    public void setCaptureMillis(long captureMillis) { this.captureMillis = captureMillis; }
+
+    public long getCompareMillis() { return compareMillis; }
+    public void setCompareMillis(long compareMillis) { this.compareMillis = compareMillis; }
+
+    public Long getStagingCaptureMillis() { return stagingCaptureMillis; }
+    public void setStagingCaptureMillis(Long stagingCaptureMillis) { this.stagingCaptureMillis = stagingCaptureMillis; }
+
+    public Long getProdCaptureMillis() { return prodCaptureMillis; }
+    public void setProdCaptureMillis(Long prodCaptureMillis) { this.prodCaptureMillis = prodCaptureMillis; }
+
+    public String getTrace() { return trace; }
+    public void setTrace(String trace) { this.trace = trace; }
+}
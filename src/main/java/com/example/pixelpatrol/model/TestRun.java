@@ -1,4 +1,62 @@
 package com.example.pixelpatrol.model;
 
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One execution of a batch (or a single "Run" click).
+ * The id is the same runId returned by POST /api/runs.
+ */
+@Entity
+@Table(name = "test_runs", indexes = {
+        @Index(name = "idx_test_runs_started_at", columnList = "started_at")
+})
 public class TestRun {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "collection_id")
+    private Long collectionId; // null = ad-hoc list of projects
+
+    @Column(name = "total_projects")
+    private int totalProjects;
+
+    private String status; // QUEUED, RUNNING, COMPLETED
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // Constructors
+    public TestRun() {}
+    public TestRun(String id, Long collectionId, int totalProjects) {
+        this.id = id;
+        this.collectionId = collectionId;
+        this.totalProjects = totalProjects;
+        this.status = "QUEUED";
+        this.startedAt = LocalDateTime.now();
+    }
+
+    // Getters & Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Long getCollectionId() { return collectionId; }
+    public void setCollectionId(Long collectionId) { this.collectionId = collectionId; }
+
+    public int getTotalProjects() { return totalProjects; }
+    public void setTotalProjects(int totalProjects) { this.totalProjects = totalProjects; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
 }
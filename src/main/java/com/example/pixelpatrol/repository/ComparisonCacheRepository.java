@@ -0,0 +1,9 @@
+package com.example.pixelpatrol.repository;
+
+import com.example.pixelpatrol.model.ComparisonCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ComparisonCacheRepository extends JpaRepository<ComparisonCacheEntry, String> {
+}
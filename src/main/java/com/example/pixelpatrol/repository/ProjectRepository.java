@@ -2,8 +2,13 @@ package com.example.pixelpatrol.repository;
 
 import com.example.pixelpatrol.model.Project;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -12,4 +17,12 @@ public interface ProjectRepository extends JpaRepository<Project, Long> {
 
 
     List<Project> findByCollectionIsNull(); // Find projects without a folder
+
+    List<Project> findByCollectionId(Long collectionId); // Projects of a folder without loading the folder (CLI runs)
+
+    // Only the baseline columns: a run holds a stale copy of the project, saving it would undo edits
+    @Modifying
+    @Transactional
+    @Query("UPDATE Project p SET p.baselinePath = :path, p.baselineCapturedAt = :capturedAt WHERE p.id = :id")
+    int updateBaseline(@Param("id") Long id, @Param("path") String path, @Param("capturedAt") LocalDateTime capturedAt);
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.example.pixelpatrol.repository;
+
+import com.example.pixelpatrol.model.TestResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TestResultRepository extends JpaRepository<TestResult, String>, TestResultRepositoryCustom {
+
+    List<TestResult> findByRunIdOrderByStartedAtAsc(String runId);
+
+    // Last N results of EVERY requested project in 1 single query (no N+1).
+    // ROW_NUMBER() walks idx_test_results_project_started instead of sorting the whole table.
+    // The variants of one matrix run share started_at: the worst one (highest diff) comes first.
+    @Query(value = "SELECT * FROM test_results WHERE id IN (" +
+            "  SELECT id FROM (" +
+            "    SELECT id, ROW_NUMBER() OVER (PARTITION BY project_id ORDER BY started_at DESC, diff_percent DESC) AS rn" +
+            "    FROM test_results WHERE project_id IN (:projectIds)" +
+            "  ) WHERE rn <= :limit" +
+            ") ORDER BY project_id, started_at DESC, diff_percent DESC", nativeQuery = true)
+    List<TestResult> findRecentByProjectIds(@Param("projectIds") Collection<Long> projectIds, @Param("limit") int limit);
+
+    // Same as above, for every project that has ever been run
+    @Query(value = "SELECT * FROM test_results WHERE id IN (" +
+            "  SELECT id FROM (" +
+            "    SELECT id, ROW_NUMBER() OVER (PARTITION BY project_id ORDER BY started_at DESC, diff_percent DESC) AS rn" +
+            "    FROM test_results" +
+            "  ) WHERE rn <= :limit" +
+            ") ORDER BY project_id, started_at DESC, diff_percent DESC", nativeQuery = true)
+    List<TestResult> findRecentForAllProjects(@Param("limit") int limit);
+
+    // --- Artifact retention: a non-null path (or a project's baseline) is a reference that keeps a store object alive ---
+
+    @Query(value = "SELECT staging_path FROM test_results WHERE staging_path IS NOT NULL" +
+            " UNION SELECT prod_path FROM test_results WHERE prod_path IS NOT NULL" +
+            " UNION SELECT diff_path FROM test_results WHERE diff_path IS NOT NULL" +
+            " UNION SELECT baseline_path FROM projects WHERE baseline_path IS NOT NULL", nativeQuery = true)
+    List<String> findReferencedPaths();
+
+    // Drops the references of the given runs, except each project's latest result per variant (reports and the dashboard need it)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE test_results SET staging_path = NULL, prod_path = NULL, diff_path = NULL" +
+            " WHERE run_id IN (:runIds)" +
+            " AND (staging_path IS NOT NULL OR prod_path IS NOT NULL OR diff_path IS NOT NULL)" +
+            " AND id NOT IN (SELECT id FROM (" +
+            "   SELECT id, ROW_NUMBER() OVER (PARTITION BY project_id, variant ORDER BY started_at DESC) AS rn FROM test_results" +
+            " ) WHERE rn = 1)", nativeQuery = true)
+    int releaseArtifacts(@Param("runIds") Collection<String> runIds);
+}
@@ -0,0 +1,11 @@
+package com.example.pixelpatrol.repository;
+
+import com.example.pixelpatrol.model.TestResult;
+
+import java.util.List;
+
+public interface TestResultRepositoryCustom {
+
+    // Writes all rows with ONE batched JDBC statement (instead of 1 INSERT round trip per row)
+    void insertBatch(List<TestResult> results);
+}
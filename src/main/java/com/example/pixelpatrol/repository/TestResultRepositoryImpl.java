@@ -0,0 +1,51 @@
+package com.example.pixelpatrol.repository;
+
+import com.example.pixelpatrol.model.TestResult;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Spring Data picks this up automatically as the implementation of TestResultRepositoryCustom.
+ */
+public class TestResultRepositoryImpl implements TestResultRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO test_results (" +
+            "id, run_id, project_id, project_name, status, diff_percent, message, " +
+            "staging_path, prod_path, diff_path, started_at, finished_at, capture_millis, compare_millis, variant, " +
+            "staging_capture_millis, prod_capture_millis, trace" +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TestResultRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertBatch(List<TestResult> results) {
+        if (results.isEmpty()) return;
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, results, results.size(), (ps, r) -> {
+            ps.setString(1, r.getId());
+            ps.setString(2, r.getRun() != null ? r.getRun().getId() : null);
+            ps.setObject(3, r.getProjectId());
+            ps.setString(4, r.getProjectName());
+            ps.setString(5, r.getStatus());
+            ps.setFloat(6, r.getDiffPercent());
+            ps.setString(7, r.getMessage());
+            ps.setString(8, r.getStagingPath());
+            ps.setString(9, r.getProdPath());
+            ps.setString(10, r.getDiffPath());
+            ps.setTimestamp(11, r.getStartedAt() != null ? Timestamp.valueOf(r.getStartedAt()) : null);
+            ps.setTimestamp(12, r.getFinishedAt() != null ? Timestamp.valueOf(r.getFinishedAt()) : null);
+            ps.setLong(13, r.getCaptureMillis());
+            ps.setLong(14, r.getCompareMillis());
+            ps.setString(15, r.getVariant());
+            ps.setObject(16, r.getStagingCaptureMillis());
+            ps.setObject(17, r.getProdCaptureMillis());
+            ps.setString(18, r.getTrace());
+        });
+    }
+}
@@ -1,4 +1,31 @@
 package com.example.pixelpatrol.repository;
 
-public class TestRunRepository {
+import com.example.pixelpatrol.model.TestRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TestRunRepository extends JpaRepository<TestRun, String> {
+
+    List<TestRun> findTop20ByOrderByStartedAtDesc();
+
+    // --- Artifact retention ---
+
+    @Query("SELECT r.id FROM TestRun r ORDER BY r.startedAt DESC")
+    List<String> findIdsNewestFirst();
+
+    @Query("SELECT r.id FROM TestRun r WHERE r.startedAt < :cutoff")
+    List<String> findIdsStartedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    // Oldest runs whose results still point at stored screenshots
+    @Query(value = "SELECT r.id FROM test_runs r WHERE EXISTS (" +
+            "  SELECT 1 FROM test_results t WHERE t.run_id = r.id" +
+            "  AND (t.staging_path IS NOT NULL OR t.prod_path IS NOT NULL OR t.diff_path IS NOT NULL)" +
+            ") ORDER BY r.started_at LIMIT :limit", nativeQuery = true)
+    List<String> findOldestIdsHoldingArtifacts(@Param("limit") int limit);
 }
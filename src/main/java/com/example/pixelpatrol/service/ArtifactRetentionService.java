@@ -0,0 +1,159 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.repository.TestResultRepository;
+import com.example.pixelpatrol.repository.TestRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ARTIFACT RETENTION
+ * Run records reference store objects (staging / prod / diff paths of each TestResult).
+ * Old runs give up their references (by age, by count, then oldest-first while the store
+ * is over its size budget) and every object nobody references any more is deleted.
+ * The latest result of every project always keeps its screenshots.
+ */
+@Service
+public class ArtifactRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactRetentionService.class);
+
+    // SQLite allows at most 999 bound parameters per statement
+    private static final int RELEASE_CHUNK = 500;
+
+    private final ArtifactStore artifactStore;
+    private final ComparisonService comparisonService;
+    private final ThumbnailService thumbnailService;
+    private final HistoryService historyService;
+    private final TestRunRepository runRepository;
+    private final TestResultRepository resultRepository;
+    private final int maxAgeDays;
+    private final int maxRuns;
+    private final long maxBytes;
+    private final long graceMillis;
+
+    public record Report(int releasedResults, int deletedObjects, long freedBytes, long storeBytes) {}
+
+    public ArtifactRetentionService(ArtifactStore artifactStore, ComparisonService comparisonService,
+                                    ThumbnailService thumbnailService, HistoryService historyService,
+                                    TestRunRepository runRepository, TestResultRepository resultRepository,
+                                    @Value("${pixelpatrol.store.max-age-days:30}") int maxAgeDays,
+                                    @Value("${pixelpatrol.store.max-runs:500}") int maxRuns,
+                                    @Value("${pixelpatrol.store.max-size-mb:5120}") long maxSizeMb,
+                                    @Value("${pixelpatrol.store.grace-minutes:60}") int graceMinutes) {
+        this.artifactStore = artifactStore;
+        this.comparisonService = comparisonService;
+        this.thumbnailService = thumbnailService;
+        this.historyService = historyService;
+        this.runRepository = runRepository;
+        this.resultRepository = resultRepository;
+        this.maxAgeDays = maxAgeDays;
+        this.maxRuns = maxRuns;
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+        this.graceMillis = TimeUnit.MINUTES.toMillis(graceMinutes);
+    }
+
+    @Scheduled(initialDelay = 1, fixedDelayString = "${pixelpatrol.store.eviction-interval-minutes:60}", timeUnit = TimeUnit.MINUTES)
+    public void scheduledEviction() {
+        try {
+            Report report = evict();
+            if (report.deletedObjects() > 0) {
+                log.info("Artifact store: released {} results, deleted {} objects ({} MB), {} MB left.",
+                        report.releasedResults(), report.deletedObjects(), report.freedBytes() >> 20, report.storeBytes() >> 20);
+            }
+        } catch (Exception e) {
+            log.error("Artifact eviction failed", e);
+        }
+    }
+
+    public synchronized Report evict() throws IOException {
+        // Results still in the history buffer must count as references
+        historyService.flush();
+
+        // 1. Age + count: runs past either limit give up their references
+        Set<String> expired = new LinkedHashSet<>(runRepository.findIdsStartedBefore(LocalDateTime.now().minusDays(maxAgeDays)));
+        List<String> newestFirst = runRepository.findIdsNewestFirst();
+        if (newestFirst.size() > maxRuns) {
+            expired.addAll(newestFirst.subList(maxRuns, newestFirst.size()));
+        }
+        int released = release(new ArrayList<>(expired));
+        long[] sweep = sweep();
+        int deleted = (int) sweep[0];
+        long freed = sweep[1], storeBytes = sweep[2];
+
+        // 2. Size budget: release the oldest runs that still hold artifacts until we fit
+        while (storeBytes > maxBytes) {
+            List<String> oldest = runRepository.findOldestIdsHoldingArtifacts(10);
+            int n = oldest.isEmpty() ? 0 : release(oldest);
+            if (n == 0) break; // Only latest results are left, those are never evicted
+            released += n;
+            sweep = sweep();
+            deleted += (int) sweep[0];
+            freed += sweep[1];
+            storeBytes = sweep[2];
+        }
+        return new Report(released, deleted, freed, storeBytes);
+    }
+
+    private int release(List<String> runIds) {
+        int released = 0;
+        for (int i = 0; i < runIds.size(); i += RELEASE_CHUNK) {
+            released += resultRepository.releaseArtifacts(runIds.subList(i, Math.min(i + RELEASE_CHUNK, runIds.size())));
+        }
+        return released;
+    }
+
+    /**
+     * Deletes every unreferenced object older than the grace period (objects a running
+     * test just stored are not referenced yet). Returns {deleted, freed bytes, store bytes}.
+     */
+    private long[] sweep() throws IOException {
+        // 1. Mark: referenced names, plus whatever their diff manifests point at
+        Set<String> live = new HashSet<>();
+        for (String path : resultRepository.findReferencedPaths()) {
+            Path file = Paths.get(path);
+            live.add(file.getFileName().toString());
+            if (path.endsWith(".json") && Files.exists(file)) {
+                try {
+                    live.addAll(DiffArtifact.references(file));
+                } catch (IOException e) {
+                    log.warn("Unreadable diff manifest {}", file.getFileName(), e);
+                }
+            }
+        }
+
+        // 2. Sweep
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        long deleted = 0, freed = 0, kept = 0;
+        Set<String> liveHashes = new HashSet<>();
+        for (Path object : artifactStore.objects()) {
+            long size = Files.size(object);
+            String name = object.getFileName().toString();
+            if (!live.contains(name) && Files.getLastModifiedTime(object).toMillis() < cutoff) {
+                Files.deleteIfExists(object);
+                deleted++;
+                freed += size;
+            } else {
+                kept += size;
+                liveHashes.add(ArtifactStore.contentHash(object));
+            }
+        }
+        // Temp files of crashed captures
+        for (Path temp : artifactStore.tempFiles()) {
+            if (Files.getLastModifiedTime(temp).toMillis() < cutoff) Files.deleteIfExists(temp);
+        }
+        comparisonService.pruneTileHashes(liveHashes, cutoff);
+        thumbnailService.prune(liveHashes, cutoff);
+        return new long[]{deleted, freed, kept};
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.pixelpatrol.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * CONTENT-ADDRESSED ARTIFACT STORE
+ * Screenshots and diff artifacts are stored once per content, named by their SHA-256
+ * and sharded by its first 4 hex digits: ~/.pixelpatrol/store/ab/cd/abcd...ef.png
+ * Nothing is ever overwritten, so concurrent runs of the same project can't corrupt
+ * each other and an unchanged production page costs no extra disk space.
+ * Cleanup is done by ArtifactRetentionService.
+ */
+@Service
+public class ArtifactStore {
+
+    private static final Pattern OBJECT_NAME = Pattern.compile("([0-9a-f]{64})\\.[a-z]+");
+
+    private final Path root;
+    private final Path tmp;
+
+    public ArtifactStore() {
+        this(Paths.get(System.getProperty("user.home"), ".pixelpatrol", "store"));
+    }
+
+    // A store somewhere else (tests)
+    ArtifactStore(Path root) {
+        this.root = root;
+        this.tmp = root.resolve("tmp");
+        tmp.toFile().mkdirs();
+    }
+
+    public Path getRoot() { return root; }
+
+    /**
+     * A fresh file to write into; hand it to put() once it is complete.
+     */
+    public Path newTempFile(String suffix) {
+        try {
+            return Files.createTempFile(tmp, "pp-", suffix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Moves a finished file into the store and returns its permanent path.
+     * If the same content is already stored, the new copy is dropped.
+     */
+    public Path put(Path file, String extension) throws IOException {
+        return put(file, ComparisonService.sha256(file), extension);
+    }
+
+    public Path put(Path file, String sha256, String extension) throws IOException {
+        Path target = pathFor(sha256 + extension);
+        if (Files.exists(target)) {
+            Files.delete(file);
+            // Fresh mtime: eviction never removes an object a running test just produced
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return target;
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * Path of a stored object by file name ("<sha256>.png"), or null if the name is not a store name.
+     */
+    public Path resolve(String name) {
+        return OBJECT_NAME.matcher(name).matches() ? pathFor(name) : null;
+    }
+
+    /**
+     * The SHA-256 of a stored object straight from its name (no hashing), null for any other file.
+     */
+    public static String contentHash(Path path) {
+        var m = OBJECT_NAME.matcher(path.getFileName().toString());
+        return m.matches() ? m.group(1) : null;
+    }
+
+    /**
+     * Every stored object (temp files excluded).
+     */
+    public List<Path> objects() throws IOException {
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(p -> !p.startsWith(tmp))
+                    .filter(p -> OBJECT_NAME.matcher(p.getFileName().toString()).matches())
+                    .toList();
+        }
+    }
+
+    public List<Path> tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tmp)) {
+            return files.toList();
+        }
+    }
+
+    private Path pathFor(String name) {
+        return root.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.pixelpatrol.service;
+
+import com.microsoft.playwright.APIResponse;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.Request;
+import com.microsoft.playwright.Route;
+import com.microsoft.playwright.options.HttpHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ASSET CACHE
+ * Optional route layer (BrowserContext.route) in front of every capture:
+ * - static assets (CSS, JS, fonts, images) come from a disk cache shared by all workers and projects,
+ *   so the CDN bundle staging and production both load is downloaded once instead of once per page;
+ * - requests to blocked third-party domains (analytics, ads, chat widgets) are aborted, so they can't
+ *   keep a page from going network-idle or paint a widget into the screenshot.
+ * Only responses the server allows to be cached are kept (Cache-Control max-age, no no-store / no-cache /
+ * private), and never longer than max-ttl-hours, so a re-deployed staging bundle is not hidden.
+ * Entries are per browser engine, and a response with a Vary header is only replayed to a request that
+ * sends the same values for the headers it names (Vary: *, Cookie or Authorization is not cached).
+ * Files: ~/.pixelpatrol/assets/<sha256 of engine + url>.asset, least recently used dropped beyond max-size-mb.
+ */
+@Service
+public class AssetCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AssetCache.class);
+
+    private static final int MAGIC = 0x50504132; // "PPA2": with the Vary request headers
+    private static final long MAX_ENTRY_BYTES = 8 * 1024 * 1024;
+
+    private static final Set<String> CACHEABLE_REQUESTS = Set.of("stylesheet", "script", "font", "image");
+    private static final List<String> CACHEABLE_CONTENT = List.of("text/css", "text/javascript", "application/javascript",
+            "application/x-javascript", "font/", "application/font", "application/x-font", "application/vnd.ms-fontobject", "image/");
+    // Replayed with a cached body. Content-Encoding / Length are dropped: the body is stored decoded
+    private static final Set<String> KEPT_HEADERS = Set.of("content-type", "access-control-allow-origin",
+            "access-control-allow-credentials", "timing-allow-origin");
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age=(\\d+)");
+    // Request headers Playwright doesn't expose to route handlers: a response varying on them is not cached
+    private static final Set<String> HIDDEN_REQUEST_HEADERS = Set.of("cookie", "authorization");
+    // Bodies are stored decoded, so they fit any Accept-Encoding
+    private static final Set<String> IGNORED_VARY = Set.of("accept-encoding");
+
+    private final Path dir = Paths.get(System.getProperty("user.home"), ".pixelpatrol", "assets");
+    private final boolean enabled;
+    private final List<String> blockedDomains;
+    private final long maxBytes;
+    private final long maxTtlMillis;
+
+    // Cache key -> file size, in access order (LRU)
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    public AssetCache(@Value("${pixelpatrol.capture.asset-cache.enabled:true}") boolean enabled,
+                      @Value("${pixelpatrol.capture.asset-cache.max-size-mb:512}") long maxSizeMb,
+                      @Value("${pixelpatrol.capture.asset-cache.max-ttl-hours:24}") int maxTtlHours,
+                      @Value("${pixelpatrol.capture.blocked-domains:}") List<String> blockedDomains) {
+        this.enabled = enabled;
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+        this.maxTtlMillis = TimeUnit.HOURS.toMillis(maxTtlHours);
+        this.blockedDomains = blockedDomains.stream()
+                .map(d -> d.trim().toLowerCase(Locale.ROOT))
+                .filter(d -> !d.isEmpty())
+                .toList();
+        if (enabled) {
+            dir.toFile().mkdirs();
+            loadIndex();
+        }
+    }
+
+    /**
+     * Hits / downloads / blocked requests of ONE capture context. Only touched by the
+     * worker thread that owns the context (route handlers run on it).
+     */
+    public static final class Routing {
+        private int cached, downloaded, blocked;
+
+        public String summary() {
+            return cached + " cached, " + downloaded + " downloaded, " + blocked + " blocked";
+        }
+
+        // Contexts are reused: counts start over for every capture
+        public void reset() {
+            cached = downloaded = blocked = 0;
+        }
+    }
+
+    /**
+     * Routes every request of the context (a browser of that engine) through the cache / block list.
+     * Returns null when both are switched off (the context is left untouched).
+     */
+    public Routing attach(BrowserContext context, String engine) {
+        if (!enabled && blockedDomains.isEmpty()) return null;
+        Routing routing = new Routing();
+        context.route("**/*", route -> handle(route, engine, routing));
+        return routing;
+    }
+
+    private void handle(Route route, String engine, Routing routing) {
+        Request request = route.request();
+        String url = request.url();
+
+        // 1. Third-party noise never leaves the browser
+        if (isBlocked(url)) {
+            routing.blocked++;
+            route.abort("blockedbyclient");
+            return;
+        }
+
+        // 2. Pages, XHR, POSTs... go to the network untouched
+        if (!enabled || !"GET".equals(request.method()) || !CACHEABLE_REQUESTS.contains(request.resourceType())
+                || !url.startsWith("http") || url.length() > 4000) {
+            route.resume();
+            return;
+        }
+
+        // 3. Static asset: from disk if we have a fresh copy (that fits this request's Vary headers)
+        String key = sha256(engine + " " + url);
+        Entry entry = read(key, url, request);
+        if (entry != null) {
+            routing.cached++;
+            route.fulfill(new Route.FulfillOptions().setStatus(200).setHeaders(entry.headers).setBodyBytes(entry.body));
+            return;
+        }
+
+        // 4. Download it once, keep it if the server allows
+        APIResponse response;
+        try {
+            response = route.fetch();
+        } catch (PlaywrightException e) {
+            route.resume(); // Let the browser fail (or succeed) on its own
+            return;
+        }
+        routing.downloaded++;
+        long ttl = ttlMillis(response);
+        if (ttl > 0) {
+            write(key, url, request, response, System.currentTimeMillis() + ttl);
+        }
+        route.fulfill(new Route.FulfillOptions().setResponse(response));
+    }
+
+    private boolean isBlocked(String url) {
+        if (blockedDomains.isEmpty()) return false;
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (host == null) return false;
+        host = host.toLowerCase(Locale.ROOT);
+        for (String domain : blockedDomains) {
+            if (host.equals(domain) || host.endsWith("." + domain)) return true;
+        }
+        return false;
+    }
+
+    // How long the response may be reused, 0 = not at all
+    private long ttlMillis(APIResponse response) {
+        if (response.status() != 200) return 0;
+        Map<String, String> headers = response.headers();
+        String contentType = headers.getOrDefault("content-type", "").toLowerCase(Locale.ROOT);
+        if (CACHEABLE_CONTENT.stream().noneMatch(contentType::startsWith)) return 0;
+        List<String> vary = varyNames(headers.get("vary"));
+        if (vary.contains("*") || vary.stream().anyMatch(HIDDEN_REQUEST_HEADERS::contains)) return 0;
+
+        String cacheControl = headers.getOrDefault("cache-control", "").toLowerCase(Locale.ROOT);
+        if (cacheControl.contains("no-store") || cacheControl.contains("no-cache") || cacheControl.contains("private")) return 0;
+        Matcher maxAge = MAX_AGE.matcher(cacheControl);
+        if (!maxAge.find()) return 0;
+        try {
+            return Math.min(TimeUnit.SECONDS.toMillis(Long.parseLong(maxAge.group(1))), maxTtlMillis);
+        } catch (NumberFormatException e) {
+            return maxTtlMillis; // Absurdly large max-age
+        }
+    }
+
+    // Header names of a Vary value, lower case, without the ones that can't change the stored body
+    private static List<String> varyNames(String vary) {
+        if (vary == null || vary.isBlank()) return List.of();
+        return Arrays.stream(vary.split(","))
+                .map(name -> name.trim().toLowerCase(Locale.ROOT))
+                .filter(name -> !name.isEmpty() && !IGNORED_VARY.contains(name))
+                .toList();
+    }
+
+    // --- DISK ---
+
+    private record Entry(Map<String, String> headers, byte[] body) {}
+
+    private Entry read(String key, String url, Request request) {
+        synchronized (this) {
+            if (index.get(key) == null) return null; // Also moves it to the young end of the LRU
+        }
+        Path file = fileFor(key).toPath();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an asset file");
+            long expiresAt = in.readLong();
+            if (expiresAt < System.currentTimeMillis() || !url.equals(in.readUTF())) {
+                remove(key);
+                return null;
+            }
+            // Another variant of the same URL: a miss, the download replaces it
+            Map<String, String> requestHeaders = request.headers();
+            int varyCount = in.readInt();
+            for (int i = 0; i < varyCount; i++) {
+                String name = in.readUTF();
+                if (!in.readUTF().equals(requestHeaders.getOrDefault(name, ""))) return null;
+            }
+            Map<String, String> headers = new HashMap<>();
+            int headerCount = in.readInt();
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(headers, body);
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+    }
+
+    private void write(String key, String url, Request request, APIResponse response, long expiresAt) {
+        try {
+            byte[] body = response.body();
+            if (body.length > MAX_ENTRY_BYTES) return;
+            List<String> vary = varyNames(response.headers().get("vary"));
+            Map<String, String> requestHeaders = request.headers();
+            List<HttpHeader> headers = response.headersArray().stream()
+                    .filter(h -> KEPT_HEADERS.contains(h.name.toLowerCase(Locale.ROOT)))
+                    .toList();
+
+            // Temp file + atomic move: a worker reading the same asset never sees half a file
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeLong(expiresAt);
+                    out.writeUTF(url);
+                    out.writeInt(vary.size());
+                    for (String name : vary) {
+                        out.writeUTF(name);
+                        out.writeUTF(requestHeaders.getOrDefault(name, ""));
+                    }
+                    out.writeInt(headers.size());
+                    for (HttpHeader h : headers) {
+                        out.writeUTF(h.name.toLowerCase(Locale.ROOT));
+                        out.writeUTF(h.value);
+                    }
+                    out.writeInt(body.length);
+                    out.write(body);
+                }
+                long size = Files.size(tmp);
+                Files.move(tmp, fileFor(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                added(key, size);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException | PlaywrightException e) {
+            // Only an optimisation: the asset is simply downloaded again next time
+            log.debug("Could not cache asset {}", url, e);
+        }
+    }
+
+    private synchronized void added(String key, long size) {
+        Long previous = index.put(key, size);
+        totalBytes += size - (previous != null ? previous : 0);
+
+        // Least recently used first
+        Iterator<Map.Entry<String, Long>> oldest = index.entrySet().iterator();
+        while (totalBytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> e = oldest.next();
+            if (e.getKey().equals(key)) continue;
+            fileFor(e.getKey()).delete();
+            totalBytes -= e.getValue();
+            oldest.remove();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) totalBytes -= size;
+        fileFor(key).delete();
+    }
+
+    // Oldest files first: after a restart the least recently written assets go first
+    private void loadIndex() {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(".asset"));
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                index.put(name.substring(0, name.length() - ".asset".length()), file.length());
+                totalBytes += file.length();
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return dir.resolve(key + ".asset").toFile();
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
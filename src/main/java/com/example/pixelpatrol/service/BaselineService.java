@@ -0,0 +1,102 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.model.Project;
+import com.example.pixelpatrol.repository.ProjectRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * BASELINE MODE
+ * The production page is captured once, approved as the project's baseline and reused
+ * by every run until it expires (TTL) or is re-baselined, so a run only opens staging.
+ * There is one baseline per project, taken in the first variant of its capture matrix.
+ */
+@Service
+public class BaselineService {
+
+    private static final Logger log = LoggerFactory.getLogger(BaselineService.class);
+
+    private final ProjectRepository projectRepository;
+    private final PlaywrightService playwrightService;
+    private final ComparisonService comparisonService;
+
+    // One capture per project at a time (ReentrantLock: runs are virtual threads, synchronized would pin them)
+    private final Map<Long, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public BaselineService(ProjectRepository projectRepository, PlaywrightService playwrightService, ComparisonService comparisonService) {
+        this.projectRepository = projectRepository;
+        this.playwrightService = playwrightService;
+        this.comparisonService = comparisonService;
+    }
+
+    /**
+     * The project's current baseline, captured from production first when there is none yet,
+     * its file is gone or it is older than the project's TTL.
+     */
+    public Path baselineFor(Project project) {
+        ReentrantLock lock = lockFor(project.getId());
+        lock.lock();
+        try {
+            // The project a run holds was loaded when the run was queued -> re-read the baseline columns
+            Project current = projectRepository.findById(project.getId()).orElse(project);
+            if (current.getBaselinePath() != null && !isExpired(current)) {
+                Path baseline = Paths.get(current.getBaselinePath());
+                if (Files.exists(baseline)) {
+                    return baseline;
+                }
+            }
+            return capture(current);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Explicit re-baseline: production is captured again right now.
+     */
+    public Path rebaseline(Project project) {
+        ReentrantLock lock = lockFor(project.getId());
+        lock.lock();
+        try {
+            return capture(project);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the baseline; the next run captures a fresh one. The old file is left to retention.
+     */
+    public void clear(Long projectId) {
+        projectRepository.updateBaseline(projectId, null, null);
+    }
+
+    private boolean isExpired(Project project) {
+        int ttlHours = project.getBaselineTtlHours();
+        return ttlHours > 0 && project.getBaselineCapturedAt() != null
+                && project.getBaselineCapturedAt().plusHours(ttlHours).isBefore(LocalDateTime.now());
+    }
+
+    private Path capture(Project project) {
+        log.info("Capturing production baseline for {}...", project.getName());
+        Path baseline = playwrightService.captureScreenshot(project.getId(), project.getProductionUrl(), CaptureMatrix.primary(project),
+                PlaywrightService.Readiness.of(project)).path();
+        // Hash its tiles now, so no run ever has to decode the baseline for an unchanged page
+        comparisonService.indexBaseline(baseline);
+        projectRepository.updateBaseline(project.getId(), baseline.toString(), LocalDateTime.now());
+        return baseline;
+    }
+
+    private ReentrantLock lockFor(Long projectId) {
+        return locks.computeIfAbsent(projectId, id -> new ReentrantLock());
+    }
+}
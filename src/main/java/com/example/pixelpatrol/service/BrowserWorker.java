@@ -0,0 +1,179 @@
+package com.example.pixelpatrol.service;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One Playwright driver + its browsers, owned by exactly one capture thread.
+ * Playwright objects are NOT thread-safe, so a worker must only ever be used
+ * (and closed) by the thread that created it.
+ * Engines (chromium, firefox, webkit) are launched on first use, so a worker
+ * that only ever captures Chromium never pays for the other two.
+ * Between captures the worker keeps one warm (reset) context per profile.
+ * The counters and the process tree (driver + browsers) are read by PlaywrightService's
+ * supervisor and the health endpoint from other threads.
+ */
+public class BrowserWorker implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BrowserWorker.class);
+
+    // Playwright.create is serialised, so the driver process it starts can be told apart
+    private static final Object BOOT_LOCK = new Object();
+
+    private final String name;
+    private final Playwright playwright;
+    private final ProcessHandle driver;   // null if it couldn't be identified
+    private final long bootedAt = System.currentTimeMillis();
+    private final Map<String, Browser> browsers = new ConcurrentHashMap<>();
+    private final AtomicLong captures = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile int consecutiveErrors;
+    private volatile boolean crashed;
+    private volatile boolean closing;
+    // Idle contexts by profile ("chromium", "webkit/mobile", ...), see CaptureMatrix.Variant.profile()
+    private final Map<String, WarmContext> idle = new HashMap<>();
+
+    /**
+     * A context with its page, kept open between captures instead of being created for each one.
+     */
+    public static final class WarmContext implements AutoCloseable {
+        public final BrowserContext context;
+        public final Page page;
+        public final AssetCache.Routing routing;
+        int uses;
+
+        WarmContext(BrowserContext context, Page page, AssetCache.Routing routing) {
+            this.context = context;
+            this.page = page;
+            this.routing = routing;
+        }
+
+        @Override
+        public void close() {
+            try { context.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    public BrowserWorker(String name, Playwright.CreateOptions options) {
+        this.name = name;
+        log.info("Booting browser worker [{}]...", name);
+        synchronized (BOOT_LOCK) {
+            Set<Long> before = ProcessHandle.current().children().map(ProcessHandle::pid).collect(Collectors.toSet());
+            this.playwright = Playwright.create(options);
+            this.driver = ProcessHandle.current().children().filter(p -> !before.contains(p.pid())).findFirst().orElse(null);
+        }
+    }
+
+    public String getName() { return name; }
+    public long getBootedAt() { return bootedAt; }
+    public long getCaptures() { return captures.get(); }
+    public long getErrors() { return errors.get(); }
+    public int getConsecutiveErrors() { return consecutiveErrors; }
+    public List<String> getEngines() { return List.copyOf(browsers.keySet()); }
+
+    public void captureServed() {
+        captures.incrementAndGet();
+        consecutiveErrors = 0;
+    }
+
+    public void captureFailed() {
+        captures.incrementAndGet();
+        errors.incrementAndGet();
+        consecutiveErrors++;
+    }
+
+    /**
+     * False once a browser disconnected on its own (crash, OOM kill) or the driver process is gone.
+     */
+    public boolean isHealthy() {
+        return !crashed && (driver == null || driver.isAlive());
+    }
+
+    /**
+     * Resident memory of the driver and every browser process below it, summed (shared pages are
+     * counted once per process). Linux only: -1 where /proc isn't available.
+     */
+    public long rssBytes() {
+        if (driver == null || !Files.isDirectory(Path.of("/proc"))) return -1;
+        return Stream.concat(Stream.of(driver), driver.descendants())
+                .mapToLong(p -> rssOf(p.pid()))
+                .sum();
+    }
+
+    private static long rssOf(long pid) {
+        try (Stream<String> lines = Files.lines(Path.of("/proc", Long.toString(pid), "status"))) {
+            return lines.filter(l -> l.startsWith("VmRSS:"))
+                    .mapToLong(l -> Long.parseLong(l.replaceAll("\\D", "")) * 1024)
+                    .findFirst().orElse(0);
+        } catch (IOException | RuntimeException e) {
+            return 0; // Process exited in between
+        }
+    }
+
+    /**
+     * The browser of that engine, launched once per worker and kept open.
+     */
+    public Browser getBrowser(String engine) {
+        return browsers.computeIfAbsent(engine, this::launch);
+    }
+
+    public WarmContext takeIdle(String profile) {
+        return idle.remove(profile);
+    }
+
+    public void putIdle(String profile, WarmContext context) {
+        WarmContext previous = idle.put(profile, context);
+        if (previous != null) previous.close();
+    }
+
+    private Browser launch(String engine) {
+        log.info("Launching {} on worker [{}]...", engine, name);
+        Browser browser = switch (engine) {
+            case "chromium" -> playwright.chromium().launch(new BrowserType.LaunchOptions()
+                    .setHeadless(true)
+                    .setArgs(List.of("--no-sandbox", "--disable-gpu")));
+            case "firefox" -> playwright.firefox().launch(new BrowserType.LaunchOptions().setHeadless(true));
+            case "webkit" -> playwright.webkit().launch(new BrowserType.LaunchOptions().setHeadless(true));
+            default -> throw new IllegalArgumentException("Unknown browser '" + engine + "'");
+        };
+        browser.onDisconnected(b -> {
+            if (!closing) crashed = true;
+        });
+        return browser;
+    }
+
+    @Override
+    public void close() {
+        log.debug("Closing browser worker [{}]...", name);
+        closing = true;
+        idle.values().forEach(WarmContext::close);
+        idle.clear();
+        for (Browser browser : browsers.values()) {
+            try { browser.close(); } catch (Exception ignored) {}
+        }
+        browsers.clear();
+        try { playwright.close(); } catch (Exception ignored) {}
+        // A hung driver must not outlive its worker
+        if (driver != null && driver.isAlive()) {
+            driver.descendants().forEach(ProcessHandle::destroyForcibly);
+            driver.destroyForcibly();
+        }
+    }
+}
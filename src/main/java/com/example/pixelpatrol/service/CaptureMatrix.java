@@ -0,0 +1,121 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.model.Project;
+
+import java.util.*;
+
+/**
+ * CAPTURE MATRIX
+ * Which browsers and viewports a project is captured in. Both are comma separated on the Project:
+ * browsers "chromium,firefox,webkit", viewports presets ("desktop", "laptop", "tablet", "mobile")
+ * or explicit sizes ("1440x900"). Left empty a project is captured as before: Chromium at 1920x1080.
+ */
+public final class CaptureMatrix {
+
+    public static final List<String> BROWSERS = List.of("chromium", "firefox", "webkit");
+
+    public record Viewport(String name, int width, int height, boolean mobile) {}
+
+    public record Variant(String browser, Viewport viewport) {
+        public String label() { return browser + "/" + viewport.name(); }
+
+        // Firefox has no mobile emulation (isMobile / hasTouch): it only gets the size
+        public boolean emulatesMobile() { return viewport.mobile() && !"firefox".equals(browser); }
+
+        // Browser + emulation profile: what a context is created with (the viewport can change later)
+        public String profile() { return browser + (emulatesMobile() ? "/mobile" : ""); }
+    }
+
+    private static final Map<String, Viewport> PRESETS = new LinkedHashMap<>();
+    static {
+        PRESETS.put("desktop", new Viewport("desktop", 1920, 1080, false));
+        PRESETS.put("laptop", new Viewport("laptop", 1366, 768, false));
+        PRESETS.put("tablet", new Viewport("tablet", 768, 1024, true));
+        PRESETS.put("mobile", new Viewport("mobile", 390, 844, true));
+    }
+
+    public static final Variant DEFAULT = new Variant("chromium", PRESETS.get("desktop"));
+
+    private CaptureMatrix() {
+    }
+
+    /**
+     * Every browser x viewport of the project, browsers first (the order results are shown in).
+     * Throws IllegalArgumentException for an unknown browser or viewport.
+     */
+    public static List<Variant> of(Project project) {
+        List<Variant> variants = new ArrayList<>();
+        for (String browser : browsers(project.getBrowsers())) {
+            for (Viewport viewport : viewports(project.getViewports())) {
+                variants.add(new Variant(browser, viewport));
+            }
+        }
+        return variants;
+    }
+
+    // Baseline mode keeps ONE approved production screenshot, taken in the first variant
+    public static Variant primary(Project project) {
+        return of(project).get(0);
+    }
+
+    public static boolean isDefault(List<Variant> variants) {
+        return variants.size() == 1 && variants.get(0).equals(DEFAULT);
+    }
+
+    static List<String> browsers(String spec) {
+        Set<String> browsers = new LinkedHashSet<>();
+        for (String token : tokens(spec)) {
+            if (!BROWSERS.contains(token)) {
+                throw new IllegalArgumentException("Unknown browser '" + token + "' (use " + String.join(", ", BROWSERS) + ")");
+            }
+            browsers.add(token);
+        }
+        return browsers.isEmpty() ? List.of(DEFAULT.browser()) : new ArrayList<>(browsers);
+    }
+
+    static List<Viewport> viewports(String spec) {
+        Map<String, Viewport> viewports = new LinkedHashMap<>();
+        for (String token : tokens(spec)) {
+            Viewport viewport = PRESETS.get(token);
+            if (viewport == null) viewport = parseSize(token);
+            viewports.putIfAbsent(viewport.name(), viewport);
+        }
+        return viewports.isEmpty() ? List.of(DEFAULT.viewport()) : new ArrayList<>(viewports.values());
+    }
+
+    /**
+     * Variants that can share ONE page: same browser and same emulation profile. Within a group
+     * the page is loaded once and only resized; isMobile / hasTouch are fixed per context, so
+     * a mobile viewport can't be reached by resizing a desktop page.
+     */
+    static List<List<Variant>> pageGroups(List<Variant> variants) {
+        Map<String, List<Variant>> groups = new LinkedHashMap<>();
+        for (Variant variant : variants) {
+            groups.computeIfAbsent(variant.profile(), k -> new ArrayList<>()).add(variant);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static Viewport parseSize(String token) {
+        int x = token.indexOf('x');
+        try {
+            int width = Integer.parseInt(token.substring(0, Math.max(x, 0)));
+            int height = Integer.parseInt(token.substring(x + 1));
+            if (width >= 200 && width <= 3840 && height >= 200 && height <= 4320) {
+                return new Viewport(width + "x" + height, width, height, false);
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Unknown viewport '" + token + "' (use " + String.join(", ", PRESETS.keySet())
+                + " or WIDTHxHEIGHT between 200x200 and 3840x4320)");
+    }
+
+    private static List<String> tokens(String spec) {
+        if (spec == null) return List.of();
+        return Arrays.stream(spec.split(","))
+                .map(s -> s.trim().toLowerCase(Locale.ROOT))
+                .filter(s -> !s.isEmpty())
+                .toList();
+    }
+}
@@ -1,70 +1,675 @@
 package com.example.pixelpatrol.service;
 
-import com.github.romankh3.image.comparison.ImageComparison;
-import com.github.romankh3.image.comparison.model.ImageComparisonResult;
-import com.github.romankh3.image.comparison.model.ImageComparisonState;
-import com.github.romankh3.image.comparison.ImageComparisonUtil;
+import com.example.pixelpatrol.model.ComparisonCacheEntry;
+import com.example.pixelpatrol.model.ComparisonMode;
+import com.example.pixelpatrol.model.Project;
+import com.example.pixelpatrol.repository.ComparisonCacheRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 @Service
 public class ComparisonService {
 
+    private static final Logger log = LoggerFactory.getLogger(ComparisonService.class);
+
+    // Bump when the diff algorithm changes, so old cached verdicts are not reused
+    private static final String CACHE_VERSION = "v3";
+
+    private final ComparisonCacheRepository cacheRepository;
+    private final ArtifactStore artifactStore;
+    private final PipelineMetrics metrics;
+    private final PixelDiffEngine diffEngine;
+    private final TileHashStore tileStore;
+    private final int tileSize;
+    private final int streamingMinHeight;
+    private final int stripRows;
+
+    public ComparisonService(ComparisonCacheRepository cacheRepository, ArtifactStore artifactStore, PipelineMetrics metrics,
+                             @Value("${pixelpatrol.compare.parallelism:0}") int parallelism,
+                             @Value("${pixelpatrol.compare.tile-size:256}") int tileSize,
+                             @Value("${pixelpatrol.compare.streaming-min-height:8000}") int streamingMinHeight,
+                             @Value("${pixelpatrol.compare.strip-height:1024}") int stripHeight) {
+        this.cacheRepository = cacheRepository;
+        this.artifactStore = artifactStore;
+        this.metrics = metrics;
+        // 0 = auto: one band worker per core
+        this.diffEngine = new PixelDiffEngine(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.tileStore = new TileHashStore(Paths.get(System.getProperty("user.home"), ".pixelpatrol", "tiles"));
+        this.tileSize = Math.max(16, tileSize);
+        this.streamingMinHeight = streamingMinHeight;
+        // Whole tiles per strip, so tile hashes line up with the in-memory path
+        this.stripRows = Math.max(1, stripHeight / this.tileSize) * this.tileSize;
+        log.info("Pixel diff engine ready ({} kernel).", diffEngine.getKernelName());
+    }
+
     // Wrapper to hold result data
     public static class DiffResult {
-        public Path diffPath;    // null if match
-        public float diffPercent; // 0.0 if match
+        public Path diffPath;    // Diff artifact manifest (see DiffArtifact), null if passed
+        public float diffPercent; // 0.0 if identical
+        public boolean passed;   // diffPercent within the project's pass threshold
 
         public DiffResult(Path path, float percent) {
+            this(path, percent, path == null && percent == 0.0f);
+        }
+
+        public DiffResult(Path path, float percent, boolean passed) {
             this.diffPath = path;
             this.diffPercent = percent;
+            this.passed = passed;
+        }
+    }
+
+    /**
+     * Per-project comparison rules (EXACT by default).
+     */
+    public record Settings(ComparisonMode mode, double colorThreshold, boolean ignoreAntialiasing, float passThreshold) {
+        public static final Settings EXACT = new Settings(ComparisonMode.EXACT, 0, false, 0f);
+
+        public static Settings of(Project project) {
+            return new Settings(project.getComparisonMode(), project.getColorThreshold(),
+                    project.isIgnoreAntialiasing(), project.getPassThreshold());
+        }
+
+        PixelDiffEngine.Options engineOptions() {
+            return mode == ComparisonMode.PERCEPTUAL
+                    ? new PixelDiffEngine.Options(true, colorThreshold, ignoreAntialiasing)
+                    : PixelDiffEngine.Options.EXACT;
+        }
+
+        // Part of the cache key: the same two screenshots can pass in one mode and fail in another
+        String fingerprint() {
+            return mode == ComparisonMode.PERCEPTUAL
+                    ? "P" + colorThreshold + (ignoreAntialiasing ? "a" : "") + "/" + passThreshold
+                    : "E/" + passThreshold;
+        }
+    }
+
+    /**
+     * Time spent per stage of one comparison, recorded once its outcome is known.
+     * Streaming decodes while it diffs: decode time is counted by RowWindow and taken out of the other stages.
+     */
+    private static final class Stages {
+        long decode, diff, write;
+
+        // Nanos since 'since', minus the decoding done in between
+        long since(long since, long decodeBefore) {
+            return System.nanoTime() - since - (decode - decodeBefore);
         }
     }
 
+    /**
+     * CACHED COMPARE
+     * Hashing two PNGs is ~100x cheaper than decoding and diffing them, so we only
+     * run the real comparison when one of the input files has actually changed.
+     */
     public DiffResult compareAndGetDiff(Path stagingPath, Path prodPath) {
+        return compareAndGetDiff(stagingPath, prodPath, Settings.EXACT);
+    }
+
+    public DiffResult compareAndGetDiff(Path stagingPath, Path prodPath, Settings settings) {
+        return compareAndGetDiff(null, stagingPath, prodPath, settings, Trace.Span.root("compare"));
+    }
+
+    // 'span' gets the hash / decode / diff / write children of this comparison
+    public DiffResult compareAndGetDiff(Long projectId, Path stagingPath, Path prodPath, Settings settings, Trace.Span span) {
+        String project = PipelineMetrics.project(projectId);
+        String stagingHash, prodHash;
+        long hashing = System.nanoTime();
         try {
-            // 1. Read Images
-            BufferedImage stagingImg = ImageComparisonUtil.readImageFromResources(stagingPath.toAbsolutePath().toString());
-            BufferedImage prodImg = ImageComparisonUtil.readImageFromResources(prodPath.toAbsolutePath().toString());
-
-            // 2. Setup Comparison
-            ImageComparison comparison = new ImageComparison(prodImg, stagingImg);
-            // comparison.setAllowingPercentOfDifferentPixels(0.01); // Optional: Ignore 1% noise
-
-            // 3. Compare
-            ImageComparisonResult result = comparison.compareImages();
-
-            // 4. Check for ANY difference (Mismatch OR Size Mismatch)
-            // BUG FIX: Previously this only checked for MISMATCH, ignoring SIZE_MISMATCH
-            if (result.getImageComparisonState() != ImageComparisonState.MATCH) {
-
-                // If sizes differ, the percent might be calculated differently.
-                // We force it to be at least 100% if it's a size mismatch to ensure failure visibility.
-                float percent = result.getDifferencePercent();
-                if (result.getImageComparisonState() == ImageComparisonState.SIZE_MISMATCH) {
-                    System.out.println("⚠️ Dimension Mismatch Detected! Marking as failed.");
-                    percent = 100.0f;
-                }
+            stagingHash = contentHash(stagingPath);
+            prodHash = contentHash(prodPath);
+        } catch (IOException e) {
+            metrics.verdict(project, "error");
+            throw new RuntimeException("Comparison failed: " + e.getMessage());
+        }
+        long hashed = System.nanoTime();
+        span.record("hash", hashing, hashed);
+
+        // Byte-identical files: nothing to decode, nothing to cache
+        if (stagingHash.equals(prodHash)) {
+            metrics.verdict(project, "pass");
+            span.note("identical bytes");
+            return new DiffResult(null, 0.0f, true);
+        }
+
+        String cacheKey = CACHE_VERSION + ":" + settings.fingerprint() + ":" + stagingHash + ":" + prodHash;
+        DiffResult cached = cacheRepository.findById(cacheKey).map(this::fromCache).orElse(null);
+        if (cached != null) {
+            metrics.verdict(project, cached.passed ? "pass" : "fail");
+            span.note("cached verdict");
+            return cached;
+        }
+
+        Stages stages = new Stages();
+        DiffResult result;
+        try {
+            result = computeDiff(stagingPath, stagingHash, prodPath, prodHash, settings, stages);
+        } catch (RuntimeException e) {
+            recordStages(project, "error", stages, span, hashed);
+            throw e;
+        }
+        recordStages(project, result.passed ? "pass" : "fail", stages, span, hashed);
+        saveToCache(cacheKey, result);
+        return result;
+    }
+
+    private void recordStages(String project, String outcome, Stages stages, Trace.Span span, long start) {
+        metrics.compare("decode", project, outcome, stages.decode);
+        metrics.compare("diff", project, outcome, stages.diff);
+        metrics.compare("write", project, outcome, stages.write);
+        metrics.verdict(project, outcome);
+
+        // Streaming compares interleave the stages strip by strip: the waterfall shows their totals back to back
+        long at = start;
+        if (stages.decode > 0) span.record("decode", at, at += stages.decode);
+        if (stages.diff > 0) span.record("diff", at, at += stages.diff);
+        if (stages.write > 0) span.record("write artifacts", at, at + stages.write);
+    }
+
+    // Returns null when the cached diff file is gone or was overwritten by a newer run.
+    // Store objects never change in place (their name is their hash) and ArtifactStore.put touches their
+    // mtime whenever the same diff is produced again, so only files outside the store are checked for it
+    private DiffResult fromCache(ComparisonCacheEntry entry) {
+        if (entry.getDiffPath() == null) {
+            return new DiffResult(null, entry.getDiffPercent(), entry.isPassed());
+        }
+        File diffFile = new File(entry.getDiffPath());
+        if (!diffFile.isFile() || diffFile.length() != entry.getDiffSize()) {
+            return null;
+        }
+        if (ArtifactStore.contentHash(diffFile.toPath()) == null && diffFile.lastModified() != entry.getDiffModified()) {
+            return null;
+        }
+        return new DiffResult(diffFile.toPath(), entry.getDiffPercent(), entry.isPassed());
+    }
+
+    private void saveToCache(String cacheKey, DiffResult result) {
+        try {
+            ComparisonCacheEntry entry = new ComparisonCacheEntry();
+            entry.setCacheKey(cacheKey);
+            entry.setDiffPercent(result.diffPercent);
+            entry.setPassed(result.passed);
+            entry.setCreatedAt(LocalDateTime.now());
+            if (result.diffPath != null) {
+                File diffFile = result.diffPath.toFile();
+                entry.setDiffPath(diffFile.getAbsolutePath());
+                entry.setDiffSize(diffFile.length());
+                entry.setDiffModified(diffFile.lastModified());
+            }
+            cacheRepository.save(entry);
+        } catch (Exception e) {
+            // The cache is an optimisation only, never fail a comparison because of it
+            log.warn("Could not cache comparison result: {}", e.getMessage());
+        }
+    }
+
+    // Stored objects are named by their hash, everything else is hashed
+    private static String contentHash(Path file) throws IOException {
+        String stored = ArtifactStore.contentHash(file);
+        return stored != null ? stored : sha256(file);
+    }
+
+    public static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-                // Save the visual diff (The library draws rectangles around changes)
-                String diffFileName = stagingPath.getFileName().toString().replace(".png", "_DIFF.png");
-                Path diffPath = stagingPath.getParent().resolve(diffFileName);
-                result.writeResultTo(diffPath.toFile());
+    private DiffResult computeDiff(Path stagingPath, String stagingHash, Path prodPath, String prodHash, Settings settings,
+                                   Stages stages) {
+        try {
+            // 0. Very tall pages are compared strip by strip instead of fully decoded
+            if (streamingMinHeight > 0 && Math.max(imageHeight(stagingPath), imageHeight(prodPath)) >= streamingMinHeight) {
+                return computeDiffStreaming(stagingPath, stagingHash, prodPath, prodHash, settings, stages);
+            }
+
+            // 1. Read staging (decoded straight into a packed int[] raster) and hash its tiles
+            long t = System.nanoTime();
+            BufferedImage stagingImg = readImage(stagingPath);
+            int[] staging = PixelDiffEngine.pixels(stagingImg);
+            stages.decode += System.nanoTime() - t;
+            t = System.nanoTime();
+            PixelDiffEngine.TileGrid stagingTiles = tileGrid(stagingHash, staging, stagingImg.getWidth(), stagingImg.getHeight());
+
+            // 2. Same pixels as a production image we've already seen -> MATCH without decoding it
+            PixelDiffEngine.TileGrid prodTiles = tileStore.load(prodHash, tileSize);
+            if (prodTiles != null && prodTiles.sameLayout(stagingTiles) && stagingTiles.dirtyTiles(prodTiles).length == 0) {
+                stages.diff += System.nanoTime() - t;
+                return new DiffResult(null, 0.0f, true);
+            }
+            stages.diff += System.nanoTime() - t;
+
+            t = System.nanoTime();
+            BufferedImage prodImg = readImage(prodPath);
+            int[] prod = PixelDiffEngine.pixels(prodImg);
+            stages.decode += System.nanoTime() - t;
+
+            // 3. Size mismatch is always a failure, we force 100% to ensure failure visibility.
+            if (stagingImg.getWidth() != prodImg.getWidth() || stagingImg.getHeight() != prodImg.getHeight()) {
+                log.debug("⚠️ Dimension Mismatch Detected! Marking as failed.");
+                t = System.nanoTime();
+                int width = Math.max(stagingImg.getWidth(), prodImg.getWidth());
+                int height = Math.max(stagingImg.getHeight(), prodImg.getHeight());
+                BitSet cells = new BitSet();
+                BufferedImage diffImg = renderSizeMismatch(stagingImg, prodImg, cells);
+                Path artifact = writeArtifact(stagingPath, PixelDiffEngine.pixels(diffImg), width, height,
+                        Math.min(stagingImg.getWidth(), prodImg.getWidth()), Math.min(stagingImg.getHeight(), prodImg.getHeight()), cells);
+                stages.write += System.nanoTime() - t;
+                return new DiffResult(artifact, 100.0f, false);
+            }
+
+            // 4. Compare only the tiles whose hashes differ (parallel, no per-pixel allocation)
+            t = System.nanoTime();
+            int width = stagingImg.getWidth();
+            int height = stagingImg.getHeight();
+            if (prodTiles == null || !prodTiles.sameLayout(stagingTiles)) {
+                prodTiles = tileGrid(prodHash, prod, width, height);
+            }
+            int[] dirty = stagingTiles.dirtyTiles(prodTiles);
+            PixelDiffEngine.Options options = settings.engineOptions();
+            long mismatched = diffEngine.countMismatches(staging, prod, width, height, options, tileSize, dirty);
+            stages.diff += System.nanoTime() - t;
 
-                return new DiffResult(diffPath, percent);
+            // 5. Match (exactly, or within the project's tolerance)
+            float percent = (float) (mismatched * 100.0 / ((long) width * height));
+            if (mismatched == 0 || percent <= settings.passThreshold()) {
+                return new DiffResult(null, percent, true);
             }
 
-            // 5. Exact Match
-            return new DiffResult(null, 0.0f);
+            // 6. Save the visual diff (changed pixels in red over a faded staging image), changed areas only
+            t = System.nanoTime();
+            int[] out = new int[width * height];
+            diffEngine.renderDiff(staging, prod, width, height, options, out);
+            BitSet cells = new BitSet();
+            diffEngine.markDirtyCells(staging, prod, width, 0, height, 0, DiffArtifact.CELL, cells);
+            Path artifact = writeArtifact(stagingPath, out, width, height, width, height, cells);
+            stages.write += System.nanoTime() - t;
+
+            return new DiffResult(artifact, percent, false);
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Comparison failed", e);
             // CRITICAL: Do not return a "null" DiffResult here, or the controller might think it Passed.
             // Throwing exception ensures the controller catches it as an ERROR state.
             throw new RuntimeException("Comparison failed: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private PixelDiffEngine.TileGrid tileGrid(String fileHash, int[] pixels, int width, int height) {
+        PixelDiffEngine.TileGrid grid = tileStore.load(fileHash, tileSize);
+        if (grid == null || grid.width() != width || grid.height() != height) {
+            grid = diffEngine.tileGrid(pixels, width, height, tileSize);
+            tileStore.save(fileHash, grid);
+        }
+        return grid;
+    }
+
+    private static boolean fits(PixelDiffEngine.TileGrid grid, int width, int height) {
+        return grid != null && grid.width() == width && grid.height() == height;
+    }
+
+    private PixelDiffEngine.TileGrid emptyGrid(int width, int height) {
+        int tiles = ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+        return new PixelDiffEngine.TileGrid(width, height, tileSize, new long[tiles]);
+    }
+
+    /**
+     * BASELINE INDEX
+     * Hashes the tiles of an approved screenshot once, strip by strip, so every later
+     * run compares against known tiles and an unchanged staging page never decodes it.
+     */
+    public void indexBaseline(Path baseline) {
+        try {
+            String hash = contentHash(baseline);
+            if (tileStore.load(hash, tileSize) != null) return;
+
+            try (StripReader reader = StripReader.open(baseline)) {
+                int width = reader.width(), height = reader.height();
+                PixelDiffEngine.TileGrid grid = emptyGrid(width, height);
+                RowWindow window = new RowWindow(reader, Math.min(stripRows, height), null);
+                for (int y0 = 0; y0 < height; y0 += stripRows) {
+                    int y1 = Math.min(y0 + stripRows, height);
+                    window.slide(y0, y1);
+                    diffEngine.hashTileRows(window.pixels, window.start, grid, y0 / tileSize, (y1 + tileSize - 1) / tileSize);
+                }
+                tileStore.save(hash, grid);
+            }
+        } catch (IOException e) {
+            // Only an optimisation: the first compare hashes it instead
+            log.warn("Could not index baseline {}: {}", baseline.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * STREAMING COMPARE
+     * Both PNGs are decoded one strip at a time into a reused window, so peak memory is
+     * O(width x strip height) no matter how tall the page is. Perceptual mode keeps a
+     * 2-row halo around each strip for its anti-aliasing neighbourhood.
+     */
+    private DiffResult computeDiffStreaming(Path stagingPath, String stagingHash, Path prodPath, String prodHash,
+                                            Settings settings, Stages stages) throws IOException {
+        long t = System.nanoTime(), decoded = stages.decode;
+        PixelDiffEngine.Options options = settings.engineOptions();
+        int halo = options.perceptual() ? 2 : 0;
+
+        // 1. Both screenshots already hashed and equal -> MATCH without decoding anything
+        PixelDiffEngine.TileGrid stagingTiles = tileStore.load(stagingHash, tileSize);
+        PixelDiffEngine.TileGrid prodTiles = tileStore.load(prodHash, tileSize);
+        if (stagingTiles != null && prodTiles != null && stagingTiles.sameLayout(prodTiles)
+                && stagingTiles.dirtyTiles(prodTiles).length == 0) {
+            stages.diff += stages.since(t, decoded);
+            return new DiffResult(null, 0.0f, true);
+        }
+
+        int width, height;
+        boolean hashStaging, hashProd;
+        long mismatched = 0;
+        BitSet dirtyStrips = new BitSet();
+        BitSet cells = new BitSet();
+
+        try (StripReader stagingReader = StripReader.open(stagingPath);
+             StripReader prodReader = StripReader.open(prodPath)) {
+
+            // 2. Size mismatch is always a failure
+            if (stagingReader.width() != prodReader.width() || stagingReader.height() != prodReader.height()) {
+                log.debug("⚠️ Dimension Mismatch Detected! Marking as failed.");
+                stagingReader.close();
+                prodReader.close();
+                t = System.nanoTime();
+                decoded = stages.decode;
+                Path artifact = writeSizeMismatchStreaming(stagingPath, prodPath, stages);
+                stages.write += stages.since(t, decoded);
+                return new DiffResult(artifact, 100.0f, false);
+            }
+
+            width = stagingReader.width();
+            height = stagingReader.height();
+            // A baseline (or any screenshot seen before) keeps its tile hashes, only new images are hashed
+            hashStaging = !fits(stagingTiles, width, height);
+            hashProd = !fits(prodTiles, width, height);
+            if (hashStaging) stagingTiles = emptyGrid(width, height);
+            if (hashProd) prodTiles = emptyGrid(width, height);
+
+            // 3. Count strip by strip, skipping strips whose tiles all hash the same
+            RowWindow staging = new RowWindow(stagingReader, stripRows + 2 * halo, stages);
+            RowWindow prod = new RowWindow(prodReader, stripRows + 2 * halo, stages);
+            int cols = stagingTiles.cols();
+            for (int y0 = 0, strip = 0; y0 < height; y0 += stripRows, strip++) {
+                int y1 = Math.min(y0 + stripRows, height);
+                staging.slide(Math.max(0, y0 - halo), Math.min(height, y1 + halo));
+                prod.slide(Math.max(0, y0 - halo), Math.min(height, y1 + halo));
+
+                int fromTileRow = y0 / tileSize, toTileRow = (y1 + tileSize - 1) / tileSize;
+                if (hashStaging) diffEngine.hashTileRows(staging.pixels, staging.start, stagingTiles, fromTileRow, toTileRow);
+                if (hashProd) diffEngine.hashTileRows(prod.pixels, prod.start, prodTiles, fromTileRow, toTileRow);
+                if (Arrays.equals(stagingTiles.hashes(), fromTileRow * cols, toTileRow * cols,
+                                  prodTiles.hashes(), fromTileRow * cols, toTileRow * cols)) {
+                    continue;
+                }
+                dirtyStrips.set(strip);
+                mismatched += diffEngine.countMismatches(staging.pixels, prod.pixels, width, staging.count, options,
+                        y0 - staging.start, y1 - staging.start);
+                diffEngine.markDirtyCells(staging.pixels, prod.pixels, width, y0 - staging.start, y1 - staging.start,
+                        staging.start, DiffArtifact.CELL, cells);
+            }
+        }
+
+        if (hashStaging) tileStore.save(stagingHash, stagingTiles);
+        if (hashProd) tileStore.save(prodHash, prodTiles);
+        stages.diff += stages.since(t, decoded);
+
+        // 4. Match (exactly, or within the project's tolerance)
+        float percent = (float) (mismatched * 100.0 / ((long) width * height));
+        if (mismatched == 0 || percent <= settings.passThreshold()) {
+            return new DiffResult(null, percent, true);
+        }
+
+        // 5. Failed: second pass renders the changed strips and keeps only their patches
+        t = System.nanoTime();
+        decoded = stages.decode;
+        List<int[]> patches = DiffArtifact.rectangles(cells, width, height, stripRows);
+        try (StripReader stagingReader = StripReader.open(stagingPath);
+             StripReader prodReader = StripReader.open(prodPath);
+             DiffArtifact.Writer writer = new DiffArtifact.Writer(artifactStore, stagingPath.getFileName().toString(),
+                     width, height, width, height, stripRows, patches)) {
+
+            RowWindow staging = new RowWindow(stagingReader, stripRows + 2 * halo, stages);
+            RowWindow prod = new RowWindow(prodReader, stripRows + 2 * halo, stages);
+            int[] out = new int[(stripRows + 2 * halo) * width];
+            // Nothing below the last changed strip needs decoding
+            for (int y0 = 0, strip = 0; strip < dirtyStrips.length(); y0 += stripRows, strip++) {
+                int y1 = Math.min(y0 + stripRows, height);
+                staging.slide(Math.max(0, y0 - halo), Math.min(height, y1 + halo));
+                prod.slide(Math.max(0, y0 - halo), Math.min(height, y1 + halo));
+                if (!dirtyStrips.get(strip)) continue;
+
+                diffEngine.renderDiff(staging.pixels, prod.pixels, width, staging.count, options,
+                        y0 - staging.start, y1 - staging.start, out);
+                writer.writePatches(out, width, staging.start, y1);
+            }
+            Path artifact = writer.finish();
+            stages.write += stages.since(t, decoded);
+            return new DiffResult(artifact, percent, false);
+        }
+    }
+
+    // Streaming twin of renderSizeMismatch: pass 1 finds the changed cells, pass 2 writes their patches
+    private Path writeSizeMismatchStreaming(Path stagingPath, Path prodPath, Stages stages) throws IOException {
+        BitSet cells = new BitSet();
+        int[] size = forEachSizeMismatchStrip(stagingPath, prodPath, cells, null, stages);
+        int width = size[0], height = size[1];
+
+        List<int[]> patches = DiffArtifact.rectangles(cells, width, height, stripRows);
+        try (DiffArtifact.Writer writer = new DiffArtifact.Writer(artifactStore, stagingPath.getFileName().toString(),
+                width, height, size[2], size[3], stripRows, patches)) {
+            forEachSizeMismatchStrip(stagingPath, prodPath, new BitSet(), writer, stages);
+            return writer.finish();
+        }
+    }
+
+    // Returns {canvas width, canvas height, overlap width, overlap height}
+    private int[] forEachSizeMismatchStrip(Path stagingPath, Path prodPath, BitSet cells, DiffArtifact.Writer writer,
+                                           Stages stages) throws IOException {
+        try (StripReader stagingReader = StripReader.open(stagingPath);
+             StripReader prodReader = StripReader.open(prodPath)) {
+            int sw = stagingReader.width(), sh = stagingReader.height();
+            int pw = prodReader.width(), ph = prodReader.height();
+            int width = Math.max(sw, pw), height = Math.max(sh, ph);
+            int cols = (width + DiffArtifact.CELL - 1) / DiffArtifact.CELL;
+
+            RowWindow staging = new RowWindow(stagingReader, stripRows, stages);
+            RowWindow prod = new RowWindow(prodReader, stripRows, stages);
+            int[] out = new int[stripRows * width];
+            for (int y0 = 0; y0 < height; y0 += stripRows) {
+                int y1 = Math.min(y0 + stripRows, height);
+                if (y0 < sh) staging.slide(y0, Math.min(y1, sh));
+                if (y0 < ph) prod.slide(y0, Math.min(y1, ph));
+
+                for (int y = y0; y < y1; y++) {
+                    for (int x = 0; x < width; x++) {
+                        boolean inStaging = x < sw && y < sh;
+                        boolean inProd = x < pw && y < ph;
+                        int s = inStaging ? staging.pixels[(y - y0) * sw + x] : 0;
+                        int p = inProd ? prod.pixels[(y - y0) * pw + x] : 0;
+                        boolean same = inStaging && inProd && ((s ^ p) & PixelDiffEngine.RGB_MASK) == 0;
+                        out[(y - y0) * width + x] = same ? PixelDiffEngine.fade(s) : 0xFFFF0000;
+                        if (inStaging && inProd && !same) cells.set((y / DiffArtifact.CELL) * cols + x / DiffArtifact.CELL);
+                    }
+                }
+                if (writer != null) writer.writePatches(out, width, y0, y1);
+            }
+            return new int[]{width, height, Math.min(sw, pw), Math.min(sh, ph)};
+        }
+    }
+
+    /**
+     * Sliding window of consecutive image rows [start, start + count). Rows that are
+     * still needed by the next strip (the halo) are moved up instead of decoded again.
+     */
+    private static final class RowWindow {
+        final StripReader reader;
+        final int[] pixels;
+        final Stages stages; // null: not timed
+        int start, count;
+
+        RowWindow(StripReader reader, int maxRows, Stages stages) {
+            this.reader = reader;
+            this.pixels = new int[maxRows * reader.width()];
+            this.stages = stages;
+        }
+
+        void slide(int from, int to) throws IOException {
+            long t = System.nanoTime();
+            int width = reader.width();
+            int keep = Math.max(0, Math.min(start + count, to) - from);
+            if (keep > 0 && from != start) {
+                System.arraycopy(pixels, (from - start) * width, pixels, 0, keep * width);
+            }
+            reader.readRows(pixels, keep * width, to - from - keep);
+            start = from;
+            count = to - from;
+            if (stages != null) stages.decode += System.nanoTime() - t;
+        }
+    }
+
+    // Reads only the image header
+    private static int imageHeight(Path path) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) throw new IOException("Cannot open " + path.getFileName());
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Unsupported image format: " + path.getFileName());
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Writes the patches of an in-memory diff (cut at the compose strip height, so viewing it stays strip-sized)
+    private Path writeArtifact(Path stagingPath, int[] out, int width, int height,
+                               int overlapWidth, int overlapHeight, BitSet cells) throws IOException {
+        int rows = Math.min(height, DiffArtifact.COMPOSE_ROWS);
+        List<int[]> patches = DiffArtifact.rectangles(cells, width, height, rows);
+        try (DiffArtifact.Writer writer = new DiffArtifact.Writer(artifactStore, stagingPath.getFileName().toString(),
+                width, height, overlapWidth, overlapHeight, rows, patches)) {
+            writer.writePatches(out, width, 0, height);
+            return writer.finish();
+        }
+    }
+
+    // Canvas big enough for both: overlap is diffed normally, the area only one image covers is red
+    private BufferedImage renderSizeMismatch(BufferedImage stagingImg, BufferedImage prodImg, BitSet cells) {
+        int width = Math.max(stagingImg.getWidth(), prodImg.getWidth());
+        int height = Math.max(stagingImg.getHeight(), prodImg.getHeight());
+        BufferedImage diffImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] out = PixelDiffEngine.pixels(diffImg);
+        int[] staging = PixelDiffEngine.pixels(stagingImg);
+        int[] prod = PixelDiffEngine.pixels(prodImg);
+        int cols = (width + DiffArtifact.CELL - 1) / DiffArtifact.CELL;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean inStaging = x < stagingImg.getWidth() && y < stagingImg.getHeight();
+                boolean inProd = x < prodImg.getWidth() && y < prodImg.getHeight();
+                int s = inStaging ? staging[y * stagingImg.getWidth() + x] : 0;
+                int p = inProd ? prod[y * prodImg.getWidth() + x] : 0;
+                boolean same = inStaging && inProd && ((s ^ p) & PixelDiffEngine.RGB_MASK) == 0;
+                out[y * width + x] = same ? PixelDiffEngine.fade(s) : 0xFFFF0000;
+                if (inStaging && inProd && !same) cells.set((y / DiffArtifact.CELL) * cols + x / DiffArtifact.CELL);
+            }
+        }
+        return diffImg;
+    }
+
+    /**
+     * Decodes directly into an INT_RGB / INT_ARGB raster when the reader supports it
+     * (PNG does for 8-bit RGB/RGBA), so the diff loop can read the backing int[] without a copy.
+     */
+    static BufferedImage readImage(Path path) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) throw new IOException("Cannot open " + path.getFileName());
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Unsupported image format: " + path.getFileName());
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                while (types.hasNext()) {
+                    ImageTypeSpecifier type = types.next();
+                    int t = type.getBufferedImageType();
+                    if (t == BufferedImage.TYPE_INT_RGB || t == BufferedImage.TYPE_INT_ARGB) {
+                        param.setDestinationType(type);
+                        break;
+                    }
+                }
+                return toIntRaster(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Rare formats (palette, 16-bit, grayscale) still need one conversion copy
+    private static BufferedImage toIntRaster(BufferedImage img) {
+        int type = img.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            return img;
+        }
+        BufferedImage converted = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = converted.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+
+    /**
+     * Called by retention: forget tile hashes of screenshots that are no longer stored.
+     */
+    public int pruneTileHashes(Set<String> liveHashes, long olderThanMillis) {
+        return tileStore.prune(liveHashes, olderThanMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        diffEngine.close();
+    }
+}
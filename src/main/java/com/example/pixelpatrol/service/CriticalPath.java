@@ -0,0 +1,100 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.model.TestResult;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * CRITICAL PATH
+ * Which projects decided the wall time of a batch. Projects run side by side in a fixed number of
+ * slots, so walking back from the project that finished last, every step goes to the project whose
+ * end freed the slot the current one started in (the latest finish before its start).
+ * Only the projects on that chain were on the clock: any other one could have been faster
+ * without finishing the batch sooner.
+ */
+public final class CriticalPath {
+
+    private CriticalPath() {
+    }
+
+    public record Entry(Long projectId, String projectName, LocalDateTime startedAt, LocalDateTime finishedAt) {}
+
+    public static Map<String, Object> ofResults(List<RunService.ProjectResult> results) {
+        return of(results.stream()
+                .map(r -> new Entry(r.projectId, r.projectName, r.startedAt, r.finishedAt))
+                .toList());
+    }
+
+    // History keeps one row per variant: a project spans its first start to its last finish
+    public static Map<String, Object> ofRows(List<TestResult> rows) {
+        Map<Long, Entry> projects = new LinkedHashMap<>();
+        for (TestResult row : rows) {
+            projects.merge(row.getProjectId(), new Entry(row.getProjectId(), row.getProjectName(), row.getStartedAt(), row.getFinishedAt()),
+                    (a, b) -> new Entry(a.projectId(), a.projectName(), earliest(a.startedAt(), b.startedAt()), latest(a.finishedAt(), b.finishedAt())));
+        }
+        return of(new ArrayList<>(projects.values()));
+    }
+
+    /**
+     * Timeline of the batch: wallMillis, every project with its offset / duration from the start of
+     * the batch and whether it is critical, and the critical chain in execution order.
+     */
+    public static Map<String, Object> of(List<Entry> entries) {
+        List<Entry> timed = entries.stream()
+                .filter(e -> e.startedAt() != null && e.finishedAt() != null)
+                .sorted(Comparator.comparing(Entry::startedAt))
+                .toList();
+        if (timed.isEmpty()) {
+            return Map.of("wallMillis", 0L, "projects", List.of(), "criticalPath", List.of());
+        }
+
+        // 1. Walk back from the last finish
+        LocalDateTime batchStart = timed.get(0).startedAt();
+        Entry current = timed.stream().max(Comparator.comparing(Entry::finishedAt)).orElseThrow();
+        LocalDateTime batchEnd = current.finishedAt();
+        Set<Entry> critical = new LinkedHashSet<>();
+        while (current != null && critical.add(current)) {
+            LocalDateTime start = current.startedAt();
+            current = timed.stream()
+                    .filter(e -> !e.finishedAt().isAfter(start))
+                    .max(Comparator.comparing(Entry::finishedAt))
+                    .orElse(null);
+        }
+
+        // 2. Offsets from the start of the batch
+        List<Map<String, Object>> projects = new ArrayList<>();
+        for (Entry e : timed) {
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("projectId", e.projectId());
+            p.put("projectName", e.projectName());
+            p.put("offsetMillis", millis(batchStart, e.startedAt()));
+            p.put("durationMillis", millis(e.startedAt(), e.finishedAt()));
+            p.put("critical", critical.contains(e));
+            projects.add(p);
+        }
+        List<Long> chain = new ArrayList<>(critical.stream().map(Entry::projectId).toList());
+        Collections.reverse(chain);
+
+        Map<String, Object> timeline = new LinkedHashMap<>();
+        timeline.put("wallMillis", millis(batchStart, batchEnd));
+        timeline.put("projects", projects);
+        timeline.put("criticalPath", chain);
+        return timeline;
+    }
+
+    private static long millis(LocalDateTime from, LocalDateTime to) {
+        return Duration.between(from, to).toMillis();
+    }
+
+    private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        return b == null || a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        return b == null || a.isAfter(b) ? a : b;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.pixelpatrol.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * COMPACT DIFF ARTIFACT
+ * Instead of a full-resolution _DIFF.png, a failed comparison stores (in the ArtifactStore):
+ *   <sha>.json   manifest (canvas size + changed rectangles)
+ *   <sha>.png    the rendered diff of ONLY those rectangles, stacked ("atlas")
+ * Everything outside the rectangles is a faded copy of the staging screenshot (or red where the
+ * two images don't overlap), so the full overlay is rebuilt on demand from staging + patches.
+ */
+public final class DiffArtifact {
+
+    // Changed pixels are grouped in blocks of this size before being merged into rectangles
+    public static final int CELL = 32;
+
+    // Overlays are composed in strips of at most this many rows, and in-memory diffs cut their
+    // patches at the same height, so composing never holds more than a strip of any image
+    public static final int COMPOSE_ROWS = 256;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int RED = 0xFFFF0000;
+
+    /**
+     * patches: [x, y, w, h] per rectangle, in the order they are stacked in the atlas.
+     * Rectangles never cross a strip boundary, so they can be written and read strip by strip.
+     */
+    public record Manifest(int version, String staging, String atlas, int width, int height,
+                           int overlapWidth, int overlapHeight, int stripRows, int atlasWidth, List<int[]> patches) {
+    }
+
+    private DiffArtifact() {
+    }
+
+    // --- NAMING ---
+
+    /**
+     * Name the UI uses for the composed overlay (served by /api/images).
+     */
+    public static String imageName(Path manifest) {
+        String name = manifest.getFileName().toString();
+        return name.endsWith("_DIFF.json") ? name.replace("_DIFF.json", "_DIFF.png") : name.replace(".json", "_DIFF.png");
+    }
+
+    /**
+     * Manifest behind a requested "..._DIFF.png" (stored, or a file next to it), or null when there is none.
+     */
+    public static Path manifestForImage(Path diffImage, ArtifactStore store) {
+        String name = diffImage.getFileName().toString();
+        if (!name.endsWith("_DIFF.png")) return null;
+        Path stored = store.resolve(name.replace("_DIFF.png", ".json"));
+        if (stored != null && Files.isRegularFile(stored)) return stored;
+        Path manifest = diffImage.resolveSibling(name.replace("_DIFF.png", "_DIFF.json"));
+        return Files.isRegularFile(manifest) ? manifest : null;
+    }
+
+    /**
+     * Objects a manifest depends on (staging screenshot + atlas), for retention.
+     */
+    public static List<String> references(Path manifestPath) throws IOException {
+        Manifest m = JSON.readValue(manifestPath.toFile(), Manifest.class);
+        return List.of(m.staging(), m.atlas());
+    }
+
+    // --- RECTANGLES ---
+
+    /**
+     * Merges dirty cells into rectangles (runs of cells in a row, grown downwards while the
+     * row below has the exact same run), then cuts them at strip boundaries. Sorted by strip, y, x.
+     */
+    public static List<int[]> rectangles(BitSet cells, int width, int height, int stripRows) {
+        int cols = (width + CELL - 1) / CELL;
+        int cellRows = (height + CELL - 1) / CELL;
+        List<int[]> merged = new ArrayList<>();   // [col0, col1, row0, row1) in cells
+        Map<Long, int[]> open = new HashMap<>();
+
+        for (int row = 0; row <= cellRows; row++) {
+            Map<Long, int[]> next = new HashMap<>();
+            int col = 0;
+            while (row < cellRows && col < cols) {
+                if (!cells.get(row * cols + col)) { col++; continue; }
+                int start = col;
+                while (col < cols && cells.get(row * cols + col)) col++;
+                long key = (long) start << 32 | col;
+                int[] rect = open.remove(key);
+                if (rect == null) rect = new int[]{start, col, row, row};
+                rect[3] = row + 1;
+                next.put(key, rect);
+            }
+            merged.addAll(open.values()); // runs that did not continue are finished
+            open = next;
+        }
+
+        List<int[]> pieces = new ArrayList<>();
+        for (int[] r : merged) {
+            int x = r[0] * CELL, w = Math.min(r[1] * CELL, width) - x;
+            int y = r[2] * CELL, bottom = Math.min(r[3] * CELL, height);
+            while (y < bottom) {
+                int stripEnd = (y / stripRows + 1) * stripRows;
+                int h = Math.min(bottom, stripEnd) - y;
+                pieces.add(new int[]{x, y, w, h});
+                y += h;
+            }
+        }
+        pieces.sort(Comparator.<int[]>comparingInt(p -> p[1] / stripRows).thenComparingInt(p -> p[1]).thenComparingInt(p -> p[0]));
+        return pieces;
+    }
+
+    // --- WRITING ---
+
+    /**
+     * Receives the rendered diff strip by strip and copies out the patch pixels.
+     * finish() moves atlas + manifest into the store and returns the manifest path.
+     */
+    public static class Writer implements AutoCloseable {
+        private final ArtifactStore store;
+        private final Path atlasFile;
+        private final PngStripWriter atlas;
+        private final int[] row;
+        private final List<int[]> patches;
+        private final int[] canvas; // width, height, overlapWidth, overlapHeight, stripRows, atlasWidth
+        private final String stagingName;
+        private int next;
+        private boolean closed;
+
+        public Writer(ArtifactStore store, String stagingName, int width, int height,
+                      int overlapWidth, int overlapHeight, int stripRows, List<int[]> patches) throws IOException {
+            int atlasWidth = 1, atlasHeight = 0;
+            for (int[] p : patches) {
+                atlasWidth = Math.max(atlasWidth, p[2]);
+                atlasHeight += p[3];
+            }
+            this.store = store;
+            this.stagingName = stagingName;
+            this.patches = patches;
+            this.canvas = new int[]{width, height, overlapWidth, overlapHeight, stripRows, atlasWidth};
+            this.atlasFile = store.newTempFile(".png");
+            this.atlas = new PngStripWriter(atlasFile, atlasWidth, Math.max(1, atlasHeight));
+            this.row = new int[atlasWidth];
+            if (atlasHeight == 0) atlas.writeRows(row, 0, 1);
+        }
+
+        /**
+         * Writes every pending patch that ends before image row 'upToRow'. 'out' holds
+         * canvas rows starting at image row 'outFirstRow', 'outWidth' pixels wide.
+         */
+        public void writePatches(int[] out, int outWidth, int outFirstRow, int upToRow) throws IOException {
+            while (next < patches.size() && patches.get(next)[1] + patches.get(next)[3] <= upToRow) {
+                int[] p = patches.get(next++);
+                for (int y = p[1]; y < p[1] + p[3]; y++) {
+                    System.arraycopy(out, (y - outFirstRow) * outWidth + p[0], row, 0, p[2]);
+                    Arrays.fill(row, p[2], row.length, 0);
+                    atlas.writeRows(row, 0, 1);
+                }
+            }
+        }
+
+        public Path finish() throws IOException {
+            closed = true;
+            atlas.close();
+            String atlasName = store.put(atlasFile, ".png").getFileName().toString();
+            Manifest manifest = new Manifest(1, stagingName, atlasName, canvas[0], canvas[1],
+                    canvas[2], canvas[3], canvas[4], canvas[5], patches);
+            // Manifest last: a stored manifest always points at a complete atlas
+            Path manifestFile = store.newTempFile(".json");
+            JSON.writeValue(manifestFile.toFile(), manifest);
+            return store.put(manifestFile, ".json");
+        }
+
+        // Without finish() (comparison failed half way) the half written atlas is dropped
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                atlas.close();
+            } finally {
+                Files.deleteIfExists(atlasFile);
+            }
+        }
+    }
+
+    // --- COMPOSING ---
+
+    /**
+     * Receives the composed overlay top to bottom: 'count' full-width rows at a time, each call
+     * continuing where the previous one ended. The array is reused between calls.
+     */
+    @FunctionalInterface
+    public interface RowSink {
+        void rows(int[] pixels, int count) throws IOException;
+    }
+
+    public static Manifest read(Path manifestPath) throws IOException {
+        return JSON.readValue(manifestPath.toFile(), Manifest.class);
+    }
+
+    /**
+     * Rebuilds the full diff overlay as a PNG, one strip at a time.
+     */
+    public static void compose(Path manifestPath, ArtifactStore store, OutputStream target) throws IOException {
+        Manifest m = read(manifestPath);
+        try (PngStripWriter writer = new PngStripWriter(target, m.width(), m.height())) {
+            compose(manifestPath, m, store, (pixels, count) -> writer.writeRows(pixels, 0, count));
+        }
+    }
+
+    /**
+     * Rebuilds the full diff overlay strip by strip into 'sink' (m.width() pixels per row).
+     * A patch taller than what is left of the current strip (manifests with bigger strips)
+     * is kept until the strips below it are done.
+     */
+    public static void compose(Path manifestPath, Manifest m, ArtifactStore store, RowSink sink) throws IOException {
+        int width = m.width(), strip = Math.max(1, Math.min(m.stripRows(), COMPOSE_ROWS));
+
+        try (StripReader staging = StripReader.open(locate(manifestPath, m.staging(), store));
+             StripReader atlas = StripReader.open(locate(manifestPath, m.atlas(), store))) {
+
+            int stagingWidth = staging.width(), stagingHeight = staging.height();
+            int[] stagingRows = new int[Math.min(strip, m.height()) * stagingWidth];
+            int[] canvas = new int[Math.min(strip, m.height()) * width];
+            int[] atlasRow = new int[m.atlasWidth()];
+            List<Patch> open = new ArrayList<>();
+            int next = 0;
+
+            for (int y0 = 0; y0 < m.height(); y0 += strip) {
+                int y1 = Math.min(y0 + strip, m.height());
+                int stagingRowsHere = Math.max(0, Math.min(y1, stagingHeight) - y0);
+                staging.readRows(stagingRows, 0, stagingRowsHere);
+
+                // 1. Base layer: faded staging where both images overlap, red elsewhere
+                for (int y = y0; y < y1; y++) {
+                    int base = (y - y0) * width;
+                    for (int x = 0; x < width; x++) {
+                        canvas[base + x] = x < m.overlapWidth() && y < m.overlapHeight()
+                                ? PixelDiffEngine.fade(stagingRows[(y - y0) * stagingWidth + x])
+                                : RED;
+                    }
+                }
+
+                // 2. Read the patches that start in this strip (the atlas is read in order, once)
+                while (next < m.patches().size() && m.patches().get(next)[1] < y1) {
+                    int[] p = m.patches().get(next++);
+                    int[] pixels = new int[p[2] * p[3]];
+                    for (int r = 0; r < p[3]; r++) {
+                        atlas.readRows(atlasRow, 0, 1);
+                        System.arraycopy(atlasRow, 0, pixels, r * p[2], p[2]);
+                    }
+                    open.add(new Patch(p, pixels));
+                }
+
+                // 3. Paste their rows that fall into this strip
+                for (Iterator<Patch> it = open.iterator(); it.hasNext(); ) {
+                    Patch patch = it.next();
+                    int[] p = patch.rect();
+                    int from = Math.max(p[1], y0), to = Math.min(p[1] + p[3], y1);
+                    for (int y = from; y < to; y++) {
+                        System.arraycopy(patch.pixels(), (y - p[1]) * p[2], canvas, (y - y0) * width + p[0], p[2]);
+                    }
+                    if (p[1] + p[3] <= y1) it.remove();
+                }
+                sink.rows(canvas, y1 - y0);
+            }
+        }
+    }
+
+    private record Patch(int[] rect, int[] pixels) {}
+
+    // Store object by name; artifacts written before the store existed sit next to their manifest
+    private static Path locate(Path manifestPath, String name, ArtifactStore store) {
+        Path stored = store.resolve(name);
+        return stored != null ? stored : manifestPath.resolveSibling(name);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.pixelpatrol.service;
+
+/**
+ * Inner loop of the pixel diff: counts how many packed ARGB ints differ in a range.
+ * Implementations must not allocate per pixel.
+ */
+public interface DiffKernel {
+
+    long countMismatches(int[] a, int aFrom, int[] b, int bFrom, int length, int mask);
+
+    String name();
+
+    // Plain Java fallback, used when the Vector API module is not on the module path
+    class Scalar implements DiffKernel {
+
+        @Override
+        public long countMismatches(int[] a, int aFrom, int[] b, int bFrom, int length, int mask) {
+            long count = 0;
+            for (int i = 0; i < length; i++) {
+                if (((a[aFrom + i] ^ b[bFrom + i]) & mask) != 0) count++;
+            }
+            return count;
+        }
+
+        @Override
+        public String name() { return "scalar"; }
+    }
+}
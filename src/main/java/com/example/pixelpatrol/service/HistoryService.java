@@ -0,0 +1,156 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.model.TestResult;
+import com.example.pixelpatrol.model.TestRun;
+import com.example.pixelpatrol.repository.TestResultRepository;
+import com.example.pixelpatrol.repository.TestRunRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * RUN HISTORY
+ * Every finished project is buffered here and written to SQLite in batches,
+ * so a 400-project run costs a handful of INSERT statements instead of 400.
+ */
+@Service
+public class HistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryService.class);
+
+    private final TestRunRepository runRepository;
+    private final TestResultRepository resultRepository;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    private final List<TestResult> buffer = new ArrayList<>();
+
+    public HistoryService(TestRunRepository runRepository, TestResultRepository resultRepository, ObjectMapper objectMapper,
+                          @Value("${pixelpatrol.history.batch-size:50}") int batchSize) {
+        this.runRepository = runRepository;
+        this.resultRepository = resultRepository;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public TestRun startRun(String runId, Long collectionId, int totalProjects) {
+        return runRepository.save(new TestRun(runId, collectionId, totalProjects));
+    }
+
+    /**
+     * Buffers the result; a capture matrix result is stored as one row per variant.
+     */
+    public void record(String runId, RunService.ProjectResult r) {
+        String trace = toJson(r.trace);
+        if (r.variants != null) {
+            r.variants.forEach(variant -> record(runId, variant, trace));
+            return;
+        }
+        record(runId, r, trace);
+    }
+
+    private void record(String runId, RunService.ProjectResult r, String trace) {
+        TestRun runRef = new TestRun();
+        runRef.setId(runId);
+
+        TestResult row = new TestResult();
+        row.setId(UUID.randomUUID().toString());
+        row.setRun(runRef);
+        row.setProjectId(r.projectId);
+        row.setProjectName(r.projectName);
+        row.setStatus(r.status);
+        row.setVariant(r.variant);
+        row.setDiffPercent(r.diffPercent);
+        row.setMessage(r.message);
+        row.setStagingPath(r.stagingPath != null ? r.stagingPath.toString() : null);
+        row.setProdPath(r.prodPath != null ? r.prodPath.toString() : null);
+        row.setDiffPath(r.diffPath != null ? r.diffPath.toString() : null);
+        row.setStartedAt(r.startedAt);
+        row.setFinishedAt(r.finishedAt);
+        row.setCaptureMillis(r.captureMillis);
+        row.setCompareMillis(r.compareMillis);
+        row.setStagingCaptureMillis(r.stagingCaptureMillis);
+        row.setProdCaptureMillis(r.prodCaptureMillis);
+        row.setTrace(trace);
+
+        boolean full;
+        synchronized (buffer) {
+            buffer.add(row);
+            full = buffer.size() >= batchSize;
+        }
+        if (full) flush();
+    }
+
+    // The trace is a diagnostic: a span tree that can't be written never costs the result itself
+    private String toJson(Trace.Span trace) {
+        if (trace == null) return null;
+        try {
+            return objectMapper.writeValueAsString(trace);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize trace", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes everything buffered so far in ONE batched insert.
+     */
+    public void flush() {
+        List<TestResult> pending;
+        synchronized (buffer) {
+            if (buffer.isEmpty()) return;
+            pending = new ArrayList<>(buffer);
+            buffer.clear();
+        }
+        resultRepository.insertBatch(pending);
+    }
+
+    @Transactional
+    public void finishRun(String runId) {
+        flush();
+        runRepository.findById(runId).ifPresent(run -> {
+            run.setStatus("COMPLETED");
+            run.setFinishedAt(LocalDateTime.now());
+        });
+    }
+
+    public Optional<TestRun> findRun(String runId) {
+        return runRepository.findById(runId);
+    }
+
+    public List<TestResult> resultsOfRun(String runId) {
+        return resultRepository.findByRunIdOrderByStartedAtAsc(runId);
+    }
+
+    /**
+     * Last N results of ONE project, newest first.
+     */
+    public List<TestResult> recentResults(Long projectId, int limit) {
+        return resultRepository.findRecentByProjectIds(List.of(projectId), limit);
+    }
+
+    /**
+     * Latest result of every project that was ever run (1 query); the worst variant of a matrix run.
+     */
+    public Map<Long, TestResult> latestResultPerProject() {
+        Map<Long, TestResult> latest = new LinkedHashMap<>();
+        for (TestResult r : resultRepository.findRecentForAllProjects(1)) {
+            latest.put(r.getProjectId(), r);
+        }
+        return latest;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Don't lose the tail of a run that was still buffered
+        try { flush(); } catch (Exception e) { log.error("Could not flush run history", e); }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.pixelpatrol.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PIPELINE METRICS
+ * Where the time of a test goes, as Micrometer meters (scraped from /actuator/prometheus):
+ * - pixelpatrol.capture{stage=navigation|readiness|screenshot, project, browser, outcome}
+ * - pixelpatrol.compare{stage=decode|diff|write, project, outcome}
+ * - pixelpatrol.report{type=batch|project, outcome}
+ * - counters of capture attempts and comparison verdicts, gauges of the browser pool.
+ * Projects are tagged by id (names can be edited); "none" when a caller has no project.
+ */
+@Service
+public class PipelineMetrics {
+
+    private final MeterRegistry registry;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static String project(Long projectId) {
+        return projectId != null ? projectId.toString() : "none";
+    }
+
+    // --- CAPTURE ---
+
+    public void capture(String stage, String project, String browser, String outcome, long nanos) {
+        Timer.builder("pixelpatrol.capture")
+                .description("Page capture stages")
+                .tags("stage", stage, "project", project, "browser", browser, "outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // outcome: success, failure (retried or given up) or crash (replayed on a new browser)
+    public void captureAttempt(String project, String browser, String outcome) {
+        Counter.builder("pixelpatrol.capture.attempts")
+                .tags("project", project, "browser", browser, "outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Live view of the browser pool: queued and running captures, booted workers, recycled workers.
+     */
+    public void bindCapturePool(ThreadPoolExecutor pool, Collection<?> workers, AtomicLong recycled) {
+        Gauge.builder("pixelpatrol.capture.queue.depth", pool, p -> p.getQueue().size())
+                .description("Captures waiting for a free browser worker")
+                .register(registry);
+        Gauge.builder("pixelpatrol.capture.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Captures running right now")
+                .register(registry);
+        Gauge.builder("pixelpatrol.browser.workers", workers, Collection::size)
+                .description("Booted browser workers")
+                .register(registry);
+        FunctionCounter.builder("pixelpatrol.browser.recycled", recycled, AtomicLong::get)
+                .description("Browser workers replaced by the supervisor")
+                .register(registry);
+    }
+
+    // --- COMPARE ---
+
+    public void compare(String stage, String project, String outcome, long nanos) {
+        if (nanos <= 0) return; // Stage never reached (e.g. nothing to write for a pass)
+        Timer.builder("pixelpatrol.compare")
+                .description("Comparison stages")
+                .tags("stage", stage, "project", project, "outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // outcome: pass, fail or error
+    public void verdict(String project, String outcome) {
+        Counter.builder("pixelpatrol.compare.results")
+                .tags("project", project, "outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    // --- REPORTS ---
+
+    public void report(String type, String outcome, long nanos) {
+        Timer.builder("pixelpatrol.report")
+                .description("PDF report rendering")
+                .tags("type", type, "outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
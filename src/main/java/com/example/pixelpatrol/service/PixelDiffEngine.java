@@ -0,0 +1,469 @@
+package com.example.pixelpatrol.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * NATIVE PIXEL DIFF
+ * Works directly on the packed int[] rasters of two images (no getRGB() per pixel).
+ * The image is cut into row bands that are compared in parallel on a ForkJoinPool.
+ */
+public class PixelDiffEngine implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PixelDiffEngine.class);
+
+    // Compare RGB only (screenshots with and without an alpha channel must still match)
+    public static final int RGB_MASK = 0x00FFFFFF;
+
+    private static final int DIFF_COLOR = 0xFFFF0000; // Solid red
+    private static final int AA_COLOR = 0xFFFFFF00;   // Yellow: tolerated anti-aliasing
+    private static final int MIN_BAND_ROWS = 64;
+
+    // Pixel classes of the perceptual mode
+    private static final int SAME = 0, DIFFERENT = 1, ANTIALIASED = 2;
+
+    // Max possible YIQ delta between two colors (see pixelmatch)
+    private static final double MAX_YIQ_DELTA = 35215;
+
+    // Tile hash primes (xxHash64)
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * perceptual = false -> any RGB change counts (fast SIMD path).
+     * perceptual = true  -> YIQ color distance above 'threshold' (0..1) counts,
+     *                       optionally ignoring anti-aliased edge pixels.
+     */
+    public record Options(boolean perceptual, double threshold, boolean ignoreAntialiasing) {
+        public static final Options EXACT = new Options(false, 0, false);
+
+        double maxDelta() { return MAX_YIQ_DELTA * threshold * threshold; }
+    }
+
+    /**
+     * Fast non-cryptographic 64-bit hash of every tileSize x tileSize block of an image.
+     * Two images with equal grids are pixel-identical (RGB), so only tiles whose
+     * hash differs need the detailed per-pixel comparison.
+     */
+    public record TileGrid(int width, int height, int tileSize, long[] hashes) {
+
+        public int cols() { return (width + tileSize - 1) / tileSize; }
+        public int rows() { return (height + tileSize - 1) / tileSize; }
+
+        public boolean sameLayout(TileGrid other) {
+            return width == other.width && height == other.height && tileSize == other.tileSize;
+        }
+
+        /**
+         * Indexes (row * cols + col) of the tiles that differ. Both grids must share a layout.
+         */
+        public int[] dirtyTiles(TileGrid other) {
+            int count = 0;
+            for (int i = 0; i < hashes.length; i++) if (hashes[i] != other.hashes[i]) count++;
+            int[] dirty = new int[count];
+            for (int i = 0, d = 0; i < hashes.length; i++) if (hashes[i] != other.hashes[i]) dirty[d++] = i;
+            return dirty;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final DiffKernel kernel;
+
+    public PixelDiffEngine(int parallelism) {
+        this(parallelism, detectKernel());
+    }
+
+    public PixelDiffEngine(int parallelism, DiffKernel kernel) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.kernel = kernel;
+    }
+
+    /**
+     * Uses the SIMD kernel when the JVM has jdk.incubator.vector loaded, scalar otherwise.
+     */
+    public static DiffKernel detectKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (DiffKernel) Class.forName("com.example.pixelpatrol.service.VectorDiffKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Vector API unavailable, using scalar diff", e);
+            }
+        }
+        return new DiffKernel.Scalar();
+    }
+
+    public String getKernelName() { return kernel.name(); }
+
+    /**
+     * Backing array of an INT_RGB / INT_ARGB image (no copy).
+     */
+    public static int[] pixels(BufferedImage img) {
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Number of differing pixels between two images of the SAME size.
+     */
+    public long countMismatches(int[] a, int[] b, int width, int height) {
+        return countMismatches(a, b, width, height, Options.EXACT);
+    }
+
+    public long countMismatches(int[] a, int[] b, int width, int height, Options options) {
+        return countMismatches(a, b, width, height, options, 0, height);
+    }
+
+    /**
+     * Only counts rows [fromRow, toRow). The rows around them are still read as
+     * neighbours in perceptual mode (used for strips with a halo, see ComparisonService).
+     */
+    public long countMismatches(int[] a, int[] b, int width, int height, Options options, int fromRow, int toRow) {
+        return pool.invoke(new CountTask(a, b, width, height, options, fromRow, toRow, bandRows(toRow - fromRow)));
+    }
+
+    /**
+     * Same as above, but only walks the given tiles (see TileGrid.dirtyTiles);
+     * every other tile is known to be identical.
+     */
+    public long countMismatches(int[] a, int[] b, int width, int height, Options options, int tileSize, int[] tiles) {
+        if (tiles.length == 0) return 0;
+        return pool.invoke(new TileCountTask(a, b, width, height, options, tileSize, tiles, 0, tiles.length));
+    }
+
+    /**
+     * Hashes every tile of the image, tile rows in parallel.
+     */
+    public TileGrid tileGrid(int[] pixels, int width, int height, int tileSize) {
+        TileGrid grid = new TileGrid(width, height, tileSize, new long[((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize)]);
+        hashTileRows(pixels, 0, grid, 0, grid.rows());
+        return grid;
+    }
+
+    /**
+     * Fills tile rows [fromTileRow, toTileRow) of 'grid' from a strip of the image
+     * whose first row (pixels[0]) is image row 'firstRow'.
+     */
+    public void hashTileRows(int[] pixels, int firstRow, TileGrid grid, int fromTileRow, int toTileRow) {
+        if (fromTileRow < toTileRow) {
+            pool.invoke(new HashTask(pixels, firstRow, grid, fromTileRow, toTileRow));
+        }
+    }
+
+    /**
+     * Marks every cell x cell block that holds at least one changed pixel (cells are
+     * numbered row-major over the whole image). Rows [fromRow, toRow) of the buffers
+     * are image rows firstRow + fromRow ...
+     */
+    public void markDirtyCells(int[] a, int[] b, int width, int fromRow, int toRow, int firstRow, int cell, BitSet cells) {
+        int cols = (width + cell - 1) / cell;
+        for (int y = fromRow; y < toRow; y++) {
+            int row = y * width;
+            // Identical rows (the vast majority) cost one SIMD pass
+            if (kernel.countMismatches(a, row, b, row, width, RGB_MASK) == 0) continue;
+            int cellRow = ((firstRow + y) / cell) * cols;
+            for (int col = 0; col < cols; col++) {
+                if (cells.get(cellRow + col)) continue;
+                int x0 = col * cell;
+                if (kernel.countMismatches(a, row + x0, b, row + x0, Math.min(cell, width - x0), RGB_MASK) > 0) {
+                    cells.set(cellRow + col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills 'out' with a visual diff: differing pixels in red, the rest a faded copy of 'a'.
+     * Only called for failed comparisons, so the happy path never allocates an output image.
+     */
+    public void renderDiff(int[] a, int[] b, int width, int height, int[] out) {
+        renderDiff(a, b, width, height, Options.EXACT, out);
+    }
+
+    public void renderDiff(int[] a, int[] b, int width, int height, Options options, int[] out) {
+        renderDiff(a, b, width, height, options, 0, height, out);
+    }
+
+    public void renderDiff(int[] a, int[] b, int width, int height, Options options, int fromRow, int toRow, int[] out) {
+        pool.invoke(new RenderTask(a, b, out, width, height, options, fromRow, toRow, bandRows(toRow - fromRow)));
+    }
+
+    // Several bands per thread so a slow band (dense text) doesn't leave the other cores idle
+    private int bandRows(int height) {
+        return Math.max(MIN_BAND_ROWS, height / (pool.getParallelism() * 4));
+    }
+
+    static int fade(int argb) {
+        int r = (argb >> 16) & 0xFF, g = (argb >> 8) & 0xFF, b = argb & 0xFF;
+        int gray = (r * 77 + g * 150 + b * 29) >> 8;
+        int light = 255 - ((255 - gray) >> 2); // 25% contrast
+        return 0xFF000000 | (light << 16) | (light << 8) | light;
+    }
+
+    /**
+     * Counts differing pixels inside one rectangle [x0,x1) x [y0,y1). Shared by bands and tiles.
+     */
+    private long countRect(int[] a, int[] b, int width, int height, Options options, int x0, int y0, int x1, int y1) {
+        int length = x1 - x0;
+        long count = 0;
+        for (int y = y0; y < y1; y++) {
+            int from = y * width + x0;
+            long rowMismatches = kernel.countMismatches(a, from, b, from, length, RGB_MASK);
+            // Identical rows (the vast majority) are skipped by the SIMD kernel
+            if (!options.perceptual() || rowMismatches == 0) {
+                count += rowMismatches;
+                continue;
+            }
+            for (int x = x0; x < x1; x++) {
+                int i = y * width + x;
+                if (((a[i] ^ b[i]) & RGB_MASK) != 0 && classify(a, b, x, y, width, height, options) == DIFFERENT) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    static long hashTile(int[] pixels, int width, int x0, int y0, int x1, int y1) {
+        long h = P2 ^ ((long) (x1 - x0) << 32 | (y1 - y0));
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                h = Long.rotateLeft(h + (pixels[row + x] & RGB_MASK) * P2, 31) * P1;
+            }
+        }
+        // Final avalanche (xxHash64 style)
+        h ^= h >>> 33; h *= P2;
+        h ^= h >>> 29; h *= P1;
+        return h ^ (h >>> 32);
+    }
+
+    // --- PERCEPTUAL MODE (YIQ delta + anti-aliasing detection, ported from pixelmatch) ---
+
+    /**
+     * Classifies one pixel that is already known to differ in raw RGB. Reads only the
+     * two rasters and a 3x3 neighbourhood, so nothing is allocated.
+     */
+    static int classify(int[] a, int[] b, int x, int y, int width, int height, Options options) {
+        int i = y * width + x;
+        double delta = colorDelta(a[i], b[i], false);
+        if (Math.abs(delta) <= options.maxDelta()) return SAME;
+
+        if (options.ignoreAntialiasing()
+                && (antialiased(a, b, x, y, width, height) || antialiased(b, a, x, y, width, height))) {
+            return ANTIALIASED;
+        }
+        return DIFFERENT;
+    }
+
+    // Squared YIQ distance (signed by brightness), or just the Y difference when yOnly
+    static double colorDelta(int c1, int c2, boolean yOnly) {
+        if (((c1 ^ c2) & RGB_MASK) == 0) return 0;
+
+        int r1 = (c1 >> 16) & 0xFF, g1 = (c1 >> 8) & 0xFF, b1 = c1 & 0xFF;
+        int r2 = (c2 >> 16) & 0xFF, g2 = (c2 >> 8) & 0xFF, b2 = c2 & 0xFF;
+
+        double y1 = r1 * 0.29889531 + g1 * 0.58662247 + b1 * 0.11448223;
+        double y2 = r2 * 0.29889531 + g2 * 0.58662247 + b2 * 0.11448223;
+        double dy = y1 - y2;
+        if (yOnly) return dy;
+
+        double di = (r1 * 0.59597799 - g1 * 0.27417610 - b1 * 0.32180189)
+                  - (r2 * 0.59597799 - g2 * 0.27417610 - b2 * 0.32180189);
+        double dq = (r1 * 0.21147017 - g1 * 0.52261711 + b1 * 0.31114694)
+                  - (r2 * 0.21147017 - g2 * 0.52261711 + b2 * 0.31114694);
+
+        double delta = 0.5053 * dy * dy + 0.299 * di * di + 0.1957 * dq * dq;
+        return y1 > y2 ? -delta : delta;
+    }
+
+    /**
+     * A pixel is anti-aliasing when it sits between a darkest and a brightest neighbour
+     * that are both part of flat regions (in both images). Typical for font edges.
+     */
+    static boolean antialiased(int[] img, int[] other, int x1, int y1, int width, int height) {
+        int x0 = Math.max(x1 - 1, 0), y0 = Math.max(y1 - 1, 0);
+        int x2 = Math.min(x1 + 1, width - 1), y2 = Math.min(y1 + 1, height - 1);
+        int center = img[y1 * width + x1];
+
+        int zeroes = (x1 == x0 || x1 == x2 || y1 == y0 || y1 == y2) ? 1 : 0;
+        double min = 0, max = 0;
+        int minX = 0, minY = 0, maxX = 0, maxY = 0;
+
+        for (int x = x0; x <= x2; x++) {
+            for (int y = y0; y <= y2; y++) {
+                if (x == x1 && y == y1) continue;
+                double delta = colorDelta(center, img[y * width + x], true);
+                if (delta == 0) {
+                    if (++zeroes > 2) return false;
+                } else if (delta < min) {
+                    min = delta; minX = x; minY = y;
+                } else if (delta > max) {
+                    max = delta; maxX = x; maxY = y;
+                }
+            }
+        }
+        if (min == 0 || max == 0) return false;
+
+        return (hasManySiblings(img, minX, minY, width, height) && hasManySiblings(other, minX, minY, width, height))
+            || (hasManySiblings(img, maxX, maxY, width, height) && hasManySiblings(other, maxX, maxY, width, height));
+    }
+
+    private static boolean hasManySiblings(int[] img, int x1, int y1, int width, int height) {
+        int x0 = Math.max(x1 - 1, 0), y0 = Math.max(y1 - 1, 0);
+        int x2 = Math.min(x1 + 1, width - 1), y2 = Math.min(y1 + 1, height - 1);
+        int center = img[y1 * width + x1] & RGB_MASK;
+
+        int zeroes = (x1 == x0 || x1 == x2 || y1 == y0 || y1 == y2) ? 1 : 0;
+        for (int x = x0; x <= x2; x++) {
+            for (int y = y0; y <= y2; y++) {
+                if (x == x1 && y == y1) continue;
+                if ((img[y * width + x] & RGB_MASK) == center && ++zeroes > 2) return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    // --- FORK/JOIN TASKS ---
+
+    private final class CountTask extends RecursiveTask<Long> {
+        private final int[] a, b;
+        private final int width, height, fromRow, toRow, bandRows;
+        private final Options options;
+
+        CountTask(int[] a, int[] b, int width, int height, Options options, int fromRow, int toRow, int bandRows) {
+            this.a = a; this.b = b; this.width = width; this.height = height; this.options = options;
+            this.fromRow = fromRow; this.toRow = toRow; this.bandRows = bandRows;
+        }
+
+        @Override
+        protected Long compute() {
+            if (toRow - fromRow <= bandRows) {
+                return options.perceptual() ? countPerceptual() : countExact();
+            }
+            int mid = (fromRow + toRow) >>> 1;
+            CountTask top = new CountTask(a, b, width, height, options, fromRow, mid, bandRows);
+            top.fork();
+            long bottom = new CountTask(a, b, width, height, options, mid, toRow, bandRows).compute();
+            return top.join() + bottom;
+        }
+
+        private long countExact() {
+            int from = fromRow * width;
+            return kernel.countMismatches(a, from, b, from, (toRow - fromRow) * width, RGB_MASK);
+        }
+
+        private long countPerceptual() {
+            return countRect(a, b, width, height, options, 0, fromRow, width, toRow);
+        }
+    }
+
+    private final class TileCountTask extends RecursiveTask<Long> {
+        private static final int TILES_PER_LEAF = 4;
+
+        private final int[] a, b, tiles;
+        private final int width, height, tileSize, from, to;
+        private final Options options;
+
+        TileCountTask(int[] a, int[] b, int width, int height, Options options, int tileSize, int[] tiles, int from, int to) {
+            this.a = a; this.b = b; this.width = width; this.height = height; this.options = options;
+            this.tileSize = tileSize; this.tiles = tiles; this.from = from; this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= TILES_PER_LEAF) {
+                int cols = (width + tileSize - 1) / tileSize;
+                long count = 0;
+                for (int t = from; t < to; t++) {
+                    int x0 = (tiles[t] % cols) * tileSize;
+                    int y0 = (tiles[t] / cols) * tileSize;
+                    count += countRect(a, b, width, height, options,
+                            x0, y0, Math.min(x0 + tileSize, width), Math.min(y0 + tileSize, height));
+                }
+                return count;
+            }
+            int mid = (from + to) >>> 1;
+            TileCountTask left = new TileCountTask(a, b, width, height, options, tileSize, tiles, from, mid);
+            left.fork();
+            long right = new TileCountTask(a, b, width, height, options, tileSize, tiles, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+
+    private static final class HashTask extends RecursiveAction {
+        private final int[] pixels;
+        private final TileGrid grid;
+        private final int firstRow, fromTileRow, toTileRow;
+
+        HashTask(int[] pixels, int firstRow, TileGrid grid, int fromTileRow, int toTileRow) {
+            this.pixels = pixels; this.firstRow = firstRow; this.grid = grid;
+            this.fromTileRow = fromTileRow; this.toTileRow = toTileRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toTileRow - fromTileRow <= 1) {
+                int size = grid.tileSize(), cols = grid.cols();
+                int y0 = fromTileRow * size, y1 = Math.min(y0 + size, grid.height());
+                for (int col = 0; col < cols; col++) {
+                    int x0 = col * size;
+                    grid.hashes()[fromTileRow * cols + col] =
+                            hashTile(pixels, grid.width(), x0, y0 - firstRow, Math.min(x0 + size, grid.width()), y1 - firstRow);
+                }
+                return;
+            }
+            int mid = (fromTileRow + toTileRow) >>> 1;
+            invokeAll(new HashTask(pixels, firstRow, grid, fromTileRow, mid), new HashTask(pixels, firstRow, grid, mid, toTileRow));
+        }
+    }
+
+    private static final class RenderTask extends RecursiveTask<Void> {
+        private final int[] a, b, out;
+        private final int width, height, fromRow, toRow, bandRows;
+        private final Options options;
+
+        RenderTask(int[] a, int[] b, int[] out, int width, int height, Options options, int fromRow, int toRow, int bandRows) {
+            this.a = a; this.b = b; this.out = out; this.width = width; this.height = height; this.options = options;
+            this.fromRow = fromRow; this.toRow = toRow; this.bandRows = bandRows;
+        }
+
+        @Override
+        protected Void compute() {
+            if (toRow - fromRow <= bandRows) {
+                for (int y = fromRow; y < toRow; y++) {
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int i = row + x;
+                        out[i] = ((a[i] ^ b[i]) & RGB_MASK) == 0 ? fade(a[i]) : colorFor(x, y);
+                    }
+                }
+                return null;
+            }
+            int mid = (fromRow + toRow) >>> 1;
+            invokeAll(new RenderTask(a, b, out, width, height, options, fromRow, mid, bandRows),
+                      new RenderTask(a, b, out, width, height, options, mid, toRow, bandRows));
+            return null;
+        }
+
+        private int colorFor(int x, int y) {
+            if (!options.perceptual()) return DIFF_COLOR;
+            return switch (classify(a, b, x, y, width, height, options)) {
+                case DIFFERENT -> DIFF_COLOR;
+                case ANTIALIASED -> AA_COLOR;
+                default -> fade(a[y * width + x]);
+            };
+        }
+    }
+}
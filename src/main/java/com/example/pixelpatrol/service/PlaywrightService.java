@@ -1,50 +1,294 @@
 package com.example.pixelpatrol.service;
 
+import com.example.pixelpatrol.model.Project;
+import com.example.pixelpatrol.model.ReadinessMode;
 import com.microsoft.playwright.*;
 import com.microsoft.playwright.options.LoadState;
-import jakarta.annotation.PostConstruct;
+import com.microsoft.playwright.options.ServiceWorkerPolicy;
+import com.microsoft.playwright.options.WaitForSelectorState;
 import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class PlaywrightService {
 
-    private final String STORAGE_DIR = System.getProperty("user.home") + "/.pixelpatrol/screenshots/";
+    private static final Logger log = LoggerFactory.getLogger(PlaywrightService.class);
+
+    // How long shutdown waits for the pool threads to close their own workers
+    private static final int CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final ArtifactStore artifactStore;
+    private final AssetCache assetCache;
+    private final PipelineMetrics metrics;
+
+    // WORKER POOL
+    // Each pool thread lazily boots its OWN Playwright + Browser (Playwright is not thread-safe),
+    // so the number of pages open at once can never exceed the number of workers.
+    private final int workerCount;
+    private final ThreadPoolExecutor capturePool;
+    private final ThreadLocal<BrowserWorker> currentWorker = new ThreadLocal<>();
+    private final List<BrowserWorker> workers = new CopyOnWriteArrayList<>();
+
+    // RETRIES: exponential backoff with jitter, so pages that failed together don't all retry at the same moment
+    private static final long MAX_BACKOFF_MILLIS = 8000;
+    private final int retries;
+    private final long retryBaseMillis;
+
+    // WARM CONTEXTS: a context is reset and reused for this many captures, then replaced (0 = never reused)
+    private final int contextReuse;
+    private final boolean prewarm;
+
+    // SUPERVISOR: a worker's browser is replaced after this many captures, above this much memory or after
+    // this many failures in a row (0 = no limit). A browser that crashed is always replaced.
+    private static final int MAX_CRASH_REPLAYS = 2;
+    private final int recycleAfterCaptures;
+    private final long recycleAboveRssBytes;
+    private final int recycleAfterErrors;
+    private final AtomicLong recycled = new AtomicLong();
+
+    // Registered once per context: applies to every document before its first paint
+    private static final String FREEZE_SCRIPT = "(() => {"
+            + "  const freeze = () => {"
+            + "    const style = document.createElement('style');"
+            + "    style.textContent = '* { transition: none !important; animation: none !important; caret-color: transparent !important; }';"
+            + "    (document.head || document.documentElement).appendChild(style);"
+            + "  };"
+            + "  if (document.documentElement) freeze(); else document.addEventListener('readystatechange', freeze, {once: true});"
+            + "})();";
+
+    // Run on the page before it goes back to the pool: storage of the origin it is on (cookies are cleared by the context)
+    private static final String CLEAR_STORAGE_SCRIPT = "async () => {"
+            + "  try { localStorage.clear(); sessionStorage.clear(); } catch (e) {}"
+            + "  try { for (const db of await indexedDB.databases()) indexedDB.deleteDatabase(db.name); } catch (e) {}"
+            + "  try { for (const key of await caches.keys()) await caches.delete(key); } catch (e) {}"
+            + "}";
+
+    public PlaywrightService(ArtifactStore artifactStore, AssetCache assetCache, PipelineMetrics metrics,
+                             @Value("${pixelpatrol.capture.workers:0}") int workers,
+                             @Value("${pixelpatrol.capture.queue-capacity:64}") int queueCapacity,
+                             @Value("${pixelpatrol.capture.retries:2}") int retries,
+                             @Value("${pixelpatrol.capture.retry-base-millis:500}") long retryBaseMillis,
+                             @Value("${pixelpatrol.capture.context-reuse:50}") int contextReuse,
+                             @Value("${pixelpatrol.capture.prewarm:false}") boolean prewarm,
+                             @Value("${pixelpatrol.capture.recycle-after-captures:500}") int recycleAfterCaptures,
+                             @Value("${pixelpatrol.capture.recycle-above-rss-mb:1500}") long recycleAboveRssMb,
+                             @Value("${pixelpatrol.capture.recycle-after-errors:5}") int recycleAfterErrors) {
+        this.artifactStore = artifactStore;
+        this.assetCache = assetCache;
+        this.metrics = metrics;
+        this.retries = Math.max(0, retries);
+        this.retryBaseMillis = Math.max(1, retryBaseMillis);
+        this.contextReuse = Math.max(0, contextReuse);
+        this.prewarm = prewarm;
+        this.recycleAfterCaptures = Math.max(0, recycleAfterCaptures);
+        this.recycleAboveRssBytes = Math.max(0, recycleAboveRssMb) * 1024 * 1024;
+        this.recycleAfterErrors = Math.max(0, recycleAfterErrors);
+
+        // 0 = auto: one browser per core, capped so we don't exhaust RAM on big machines
+        this.workerCount = workers > 0 ? workers : Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.capturePool = new ThreadPoolExecutor(
+                workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, workerCount)),
+                r -> {
+                    Thread t = new Thread(r, "pp-browser-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                PlaywrightService::waitForFreeSlot);
+
+        metrics.bindCapturePool(capturePool, this.workers, recycled);
+        log.info("PixelPatrol Browser Engine configured with {} workers.", workerCount);
+    }
 
-    // SINGLETON INSTANCES
-    private Playwright playwright;
-    private Browser browser;
+    /**
+     * When a page is ready for its screenshot (see ReadinessMode). Whatever the mode, the
+     * screenshot is taken anyway once timeoutMillis is over. A project timeout of 0 or less means
+     * the default: Playwright would read 0 as "wait forever".
+     */
+    public record Readiness(ReadinessMode mode, String value, int timeoutMillis) {
+        public static final Readiness DEFAULT = new Readiness(ReadinessMode.NETWORK_IDLE, null, 10000);
+
+        public static Readiness of(Project project) {
+            ReadinessMode mode = project.getReadiness();
+            String value = project.getReadinessValue() != null ? project.getReadinessValue().trim() : "";
+            if ((mode == ReadinessMode.SELECTOR || mode == ReadinessMode.SCRIPT) && value.isEmpty()) {
+                throw new IllegalArgumentException("Readiness " + mode + " needs a " + (mode == ReadinessMode.SELECTOR ? "CSS selector" : "JS predicate"));
+            }
+            int timeout = project.getReadinessTimeoutMs();
+            return new Readiness(mode, value, timeout > 0 ? timeout : DEFAULT.timeoutMillis());
+        }
 
-    public PlaywrightService() {
-        // Ensure screenshot directory exists
-        new File(STORAGE_DIR).mkdirs();
+        // LAYOUT_STABLE: frames without any movement (default 5)
+        int stableFrames() {
+            try {
+                return value == null || value.isEmpty() ? 5 : Math.max(1, Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                return 5;
+            }
+        }
     }
 
-    @PostConstruct
-    public void init() {
-        System.out.println("Booting up PixelPatrol Browser Engine...");
-        playwright = Playwright.create(getCreateOptions());
-
-        // Launch Chromium once and keep it open
-        browser = playwright.chromium().launch(new BrowserType.LaunchOptions()
-                .setHeadless(true)
-                .setArgs(List.of("--no-sandbox", "--disable-gpu")));
+    /**
+     * A stored screenshot and its wall time: navigation (retries included) + readiness + screenshot,
+     * or for a viewport reached by resizing an open page, only resize + screenshot.
+     */
+    public record Capture(Path path, long millis) {}
 
-        System.out.println("Browser Engine Ready & Standing By!");
+    /**
+     * BACK-PRESSURE: when the queue is full the submitting thread waits for a free slot
+     * instead of failing, so a huge batch never piles up more work than the pool can take.
+     */
+    private static void waitForFreeSlot(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Browser Engine is shutting down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a capture slot", e);
+        }
     }
 
+    /**
+     * Playwright objects belong to the thread that created them, so every pool thread closes its own
+     * worker: one close task per thread, each held at a latch until all of them are claimed (a thread
+     * can't take a second one while another thread's worker is left open). Captures still queued are
+     * cancelled; a thread stuck in a capture gets CLOSE_TIMEOUT_SECONDS, then is interrupted and its
+     * worker closed from here.
+     */
     @PreDestroy
     public void cleanup() {
-        System.out.println("Shutting down Browser Engine...");
-        if (browser != null) browser.close();
-        if (playwright != null) playwright.close();
+        log.info("Shutting down Browser Engine...");
+        // 1. Queued captures never start: their callers get a CancellationException
+        List<Runnable> pending = new ArrayList<>();
+        capturePool.getQueue().drainTo(pending);
+        pending.forEach(task -> { if (task instanceof Future<?> f) f.cancel(false); });
+
+        // 2. Each pool thread closes its own worker
+        int threads = capturePool.getPoolSize();
+        CountDownLatch claimed = new CountDownLatch(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                capturePool.execute(() -> {
+                    claimed.countDown();
+                    try {
+                        claimed.await(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    BrowserWorker worker = currentWorker.get();
+                    if (worker != null) {
+                        currentWorker.remove();
+                        workers.remove(worker);
+                        worker.close();
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("Browser workers could not be closed on their own threads: {}", e.getMessage());
+        }
+        capturePool.shutdown();
+        try {
+            if (!capturePool.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                capturePool.shutdownNow();
+                capturePool.awaitTermination(2, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            capturePool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // 3. Last resort for workers whose thread never got to its close task
+        workers.forEach(BrowserWorker::close);
+        workers.clear();
+    }
+
+    public int getWorkerCount() { return workerCount; }
+
+    /**
+     * One booted worker as seen by the supervisor. rssMb is -1 where it can't be measured (no /proc).
+     */
+    public record WorkerHealth(String name, boolean healthy, List<String> engines, long captures, long errors,
+                               int consecutiveErrors, long rssMb, long uptimeSeconds) {}
+
+    /**
+     * Live workers plus pool load. Safe from any thread: only counters and /proc are read.
+     */
+    public Map<String, Object> getHealth() {
+        List<WorkerHealth> live = new ArrayList<>();
+        for (BrowserWorker worker : workers) {
+            long rss = worker.rssBytes();
+            live.add(new WorkerHealth(worker.getName(), worker.isHealthy(), worker.getEngines(), worker.getCaptures(),
+                    worker.getErrors(), worker.getConsecutiveErrors(), rss < 0 ? -1 : rss / (1024 * 1024),
+                    (System.currentTimeMillis() - worker.getBootedAt()) / 1000));
+        }
+        Map<String, Object> health = new LinkedHashMap<>();
+        health.put("configuredWorkers", workerCount);
+        health.put("activeCaptures", capturePool.getActiveCount());
+        health.put("queuedCaptures", capturePool.getQueue().size());
+        health.put("recycledWorkers", recycled.get());
+        health.put("workers", live);
+        return health;
+    }
+
+    /**
+     * Boots every worker and parks a ready Chromium desktop context in it, so the first
+     * captures pay neither the browser launch nor the context creation.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        if (!prewarm) return;
+        // Below the core size every task starts a new pool thread -> one task per worker
+        for (int i = 0; i < workerCount; i++) {
+            capturePool.execute(() -> {
+                try {
+                    BrowserWorker worker = currentWorker();
+                    String profile = CaptureMatrix.DEFAULT.profile();
+                    BrowserWorker.WarmContext warm = worker.takeIdle(profile);
+                    worker.putIdle(profile, warm != null ? warm : checkout(worker, CaptureMatrix.DEFAULT));
+                } catch (RuntimeException e) {
+                    log.warn("Could not pre-warm browser worker: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the browser owned by the calling pool thread, booting it on first use.
+     */
+    private BrowserWorker currentWorker() {
+        BrowserWorker worker = currentWorker.get();
+        if (worker == null) {
+            worker = new BrowserWorker(Thread.currentThread().getName(), getCreateOptions());
+            currentWorker.set(worker);
+            workers.add(worker);
+        }
+        return worker;
     }
 
     private Playwright.CreateOptions getCreateOptions() {
@@ -55,10 +299,10 @@ public class PlaywrightService {
         File devBundle = new File(System.getProperty("user.dir") + "/browsers_dist");
 
         if (linuxBundle.exists()) {
-            System.out.println("PROD MODE: Using installed browser bundle");
+            log.info("PROD MODE: Using installed browser bundle");
             env.put("PLAYWRIGHT_BROWSERS_PATH", linuxBundle.getAbsolutePath());
         } else if (devBundle.exists()) {
-            System.out.println("DEV MODE: Using local 'browsers_dist' bundle");
+            log.info("DEV MODE: Using local 'browsers_dist' bundle");
             env.put("PLAYWRIGHT_BROWSERS_PATH", devBundle.getAbsolutePath());
         }
 
@@ -68,87 +312,413 @@ public class PlaywrightService {
     }
 
     /**
-     * SYNCHRONIZED CAPTURE
-     * Adding 'synchronized' prevents the '__adopt__' error by ensuring
-     * only one test uses the Browser instance at a time.
+     * PARALLEL MATRIX CAPTURE
+     * Every variant (browser x viewport) of staging AND production. One pool task per side and
+     * page group (see CaptureMatrix.pageGroups): it navigates ONCE, then only resizes the page and
+     * screenshots it again for the group's other viewports, so 3 desktop sizes cost 1 page load.
+     * Tasks of all groups run side by side on different browser workers.
+     * Screenshots land in private temp files and are then moved into the ArtifactStore,
+     * so two runs of the same project never write to the same file.
+     * Returns {staging, prod} per variant, in matrix order. 'span' gets one child per page
+     * ("staging chromium/desktop"), opened when the page is queued.
      */
-    public synchronized Path[] captureScreenshots(Long projectId, String stagingUrl, String prodUrl) {
-        // Create context (Lightweight tab)
-        try (BrowserContext context = browser.newContext(new Browser.NewContextOptions().setViewportSize(1920, 1080))) {
+    public Map<CaptureMatrix.Variant, Capture[]> captureMatrix(Long projectId, String stagingUrl, String prodUrl,
+                                                             List<CaptureMatrix.Variant> variants, Readiness readiness,
+                                                             Trace.Span span) {
+        Map<CaptureMatrix.Variant, Path[]> temp = new LinkedHashMap<>();
+        for (CaptureMatrix.Variant variant : variants) {
+            temp.put(variant, new Path[]{artifactStore.newTempFile(".png"), artifactStore.newTempFile(".png")});
+        }
 
-            // Set global timeout
-            context.setDefaultNavigationTimeout(30000);
+        // Staging and prod of a group are queued next to each other, so they are taken at the same time
+        List<List<CaptureMatrix.Variant>> groups = CaptureMatrix.pageGroups(variants);
+        List<Future<long[]>> tasks = new ArrayList<>();
+        // Set when one page failed: pages not started yet are skipped, running ones give up before their next attempt
+        AtomicBoolean abandoned = new AtomicBoolean();
+        for (List<CaptureMatrix.Variant> group : groups) {
+            List<Path> stagingOut = group.stream().map(v -> temp.get(v)[0]).toList();
+            List<Path> prodOut = group.stream().map(v -> temp.get(v)[1]).toList();
+            Trace.Span stagingSpan = span.start("staging " + first(group));
+            Trace.Span prodSpan = span.start("prod " + first(group));
+            tasks.add(capturePool.submit(() -> captureOnWorker(projectId, stagingUrl, group, stagingOut, readiness, stagingSpan, abandoned::get)));
+            tasks.add(capturePool.submit(() -> captureOnWorker(projectId, prodUrl, group, prodOut, readiness, prodSpan, abandoned::get)));
+        }
 
-            Path stagingPath = Paths.get(STORAGE_DIR + "project_" + projectId + "_staging.png");
-            Path prodPath = Paths.get(STORAGE_DIR + "project_" + projectId + "_prod.png");
+        try {
+            // Wall time of every screenshot, by variant: {staging, prod}
+            Map<CaptureMatrix.Variant, long[]> millis = new HashMap<>();
+            for (int g = 0; g < groups.size(); g++) {
+                long[] staging = await(tasks.get(2 * g)), prod = await(tasks.get(2 * g + 1));
+                List<CaptureMatrix.Variant> group = groups.get(g);
+                for (int i = 0; i < group.size(); i++) {
+                    millis.put(group.get(i), new long[]{staging[i], prod[i]});
+                }
+            }
+            Map<CaptureMatrix.Variant, Capture[]> stored = new LinkedHashMap<>();
+            for (Map.Entry<CaptureMatrix.Variant, Path[]> e : temp.entrySet()) {
+                long[] ms = millis.get(e.getKey());
+                stored.put(e.getKey(), new Capture[]{
+                        new Capture(artifactStore.put(e.getValue()[0], ".png"), ms[0]),
+                        new Capture(artifactStore.put(e.getValue()[1], ".png"), ms[1])});
+            }
+            return stored;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not store screenshots for project " + projectId + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            // One capture failed -> the run is an ERROR anyway. The other pages stop early, and are waited
+            // for (results ignored) so none of them still writes into a temp file once it is deleted below
+            abandoned.set(true);
+            for (Future<long[]> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException | CancellationException ignored) {
+                    // Only the first failure is reported (cancelled: the engine is shutting down)
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            throw e;
+        } finally {
+            // Only left over when something failed (put() moves them away)
+            for (Path[] files : temp.values()) {
+                deleteQuietly(files[0]);
+                deleteQuietly(files[1]);
+            }
+        }
+    }
 
-            // Pass 'context' so we can create FRESH pages for retries
-            captureWithRetry(context, stagingUrl, stagingPath);
-            captureWithRetry(context, prodUrl, prodPath);
+    /**
+     * SINGLE CAPTURE
+     * Baseline mode only needs one page per run (staging), or the production baseline itself.
+     */
+    public Capture captureScreenshot(Long projectId, String url, CaptureMatrix.Variant variant, Readiness readiness) {
+        return captureScreenshot(projectId, url, variant, readiness, Trace.Span.root("capture"));
+    }
 
-            return new Path[]{stagingPath, prodPath};
+    // 'span' is the page's own span: it is closed when the capture is done
+    public Capture captureScreenshot(Long projectId, String url, CaptureMatrix.Variant variant, Readiness readiness,
+                                     Trace.Span span) {
+        Path file = artifactStore.newTempFile(".png");
+        try {
+            long[] millis = await(capturePool.submit(() -> captureOnWorker(projectId, url, List.of(variant), List.of(file), readiness, span, () -> false)));
+            return new Capture(artifactStore.put(file, ".png"), millis[0]);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not store screenshot of " + url + ": " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(file);
         }
     }
 
-    // NEW STRATEGY: Create a fresh page for every attempt
-    private void captureWithRetry(BrowserContext context, String url, Path outputPath) {
-        int maxRetries = 1;
+    private static void deleteQuietly(Path file) {
+        try { Files.deleteIfExists(file); } catch (IOException ignored) {}
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Capture interrupted");
+        }
+    }
 
-        for (int i = 0; i <= maxRetries; i++) {
-            Page page = null;
+    // Runs on a pool thread: a warm context (lightweight tab) on this thread's own browser.
+    // 'group' shares browser + emulation profile. Returns the wall time of each screenshot.
+    // 'span' was opened when the task was queued and is closed here, whatever the outcome.
+    // Once 'abandoned' is true (another page of the project failed) the task returns null without capturing.
+    private long[] captureOnWorker(Long projectId, String url, List<CaptureMatrix.Variant> group, List<Path> outputPaths,
+                                   Readiness readiness, Trace.Span span, BooleanSupplier abandoned) {
+        if (abandoned.getAsBoolean()) {
+            span.end("cancelled");
+            return null;
+        }
+        String project = PipelineMetrics.project(projectId);
+        long start = System.nanoTime();
+        // Time spent waiting for a free browser worker
+        span.record("queued", span.getStartNanos(), start);
+        try {
+            return captureWithRetries(project, url, group, outputPaths, readiness, start, span, abandoned);
+        } catch (CancellationException e) {
+            span.note("cancelled");
+            return null;
+        } catch (RuntimeException e) {
+            span.note("failed");
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    private long[] captureWithRetries(String project, String url, List<CaptureMatrix.Variant> group, List<Path> outputPaths,
+                                      Readiness readiness, long start, Trace.Span span, BooleanSupplier abandoned) {
+        CaptureMatrix.Variant first = group.get(0);
+        int crashes = 0;
+
+        for (int i = 0; i <= retries; i++) {
+            Trace.Span attempt = span.start("attempt " + (i + 1));
+            BrowserWorker worker = currentWorker(); // A new one if the last attempt recycled it
+            BrowserWorker.WarmContext warm = null;
             try {
-                // 1. Open a FRESH Page for this attempt
-                page = context.newPage();
+                // 1. A reset context from this worker's pool (created on first use)
+                warm = checkout(worker, first);
+                long opened = System.nanoTime();
+                if (opened - attempt.getStartNanos() >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                    attempt.record("browser context", attempt.getStartNanos(), opened);
+                }
 
                 // 2. Try Capture
-                capture(page, url, outputPath);
+                long[] millis = capture(warm.page, project, url, group, outputPaths, readiness, start, attempt);
+                attempt.end();
 
-                // 3. Success! Close page and return
-                page.close();
-                return;
+                if (warm.routing != null) {
+                    log.debug("⚡ Assets for {}: {}", url, warm.routing.summary());
+                }
+                // 3. Success! Reset the context and keep it for the next capture
+                checkin(worker, first, url, warm);
+                worker.captureServed();
+                metrics.captureAttempt(project, first.browser(), "success");
+                recycleIfDue(worker);
+                return millis;
 
             } catch (Exception e) {
-                System.err.println("Attempt " + (i + 1) + " failed for " + url + ": " + e.getMessage());
+                log.warn("Attempt {} failed for {} ({}): {}", i + 1, url, first(group), Trace.summary(e.getMessage()));
+
+                // A context that failed is never reused: the retry gets a brand new one
+                if (warm != null) {
+                    warm.close();
+                }
 
-                // Close the failed page immediately to clean up state
-                if (page != null) {
-                    try { page.close(); } catch (Exception ignored) {}
+                // A crashed browser is not the page's fault: replace it and replay the capture without using a retry
+                if (!worker.isHealthy()) {
+                    metrics.captureAttempt(project, first.browser(), "crash");
+                    attempt.end("browser crashed");
+                    recycle(worker, "browser crashed");
+                    if (crashes++ < MAX_CRASH_REPLAYS && !Thread.currentThread().isInterrupted()) {
+                        i--;
+                        continue;
+                    }
+                } else {
+                    attempt.end("failed: " + Trace.summary(e.getMessage()));
+                    metrics.captureAttempt(project, first.browser(), "failure");
+                    worker.captureFailed();
+                    recycleIfDue(worker);
                 }
 
-                if (i == maxRetries) {
-                    throw new RuntimeException("Failed to reach " + url + ". Reason: " + e.getMessage());
+                if (i == retries) {
+                    throw new RuntimeException("Failed to reach " + url + " in " + first(group) + ". Reason: " + e.getMessage());
+                }
+                // No retry for a project that already failed elsewhere
+                if (abandoned.getAsBoolean()) {
+                    throw new CancellationException("Another page of the project failed");
                 }
 
-                // Wait 1s before retrying
-                try { Thread.sleep(1000); } catch (InterruptedException ignored) {}
+                // Back off before retrying: base * 2^attempt (capped), half of it randomised
+                long ceiling = Math.min(MAX_BACKOFF_MILLIS, retryBaseMillis << Math.min(i, 20));
+                Trace.Span backoff = span.start("backoff");
+                try {
+                    Thread.sleep(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+                    backoff.end("before attempt " + (i + 2));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Capture interrupted");
+                }
             }
         }
+        throw new IllegalStateException("unreachable");
     }
 
-    private void capture(Page page, String url, Path outputPath) {
-        System.out.println("Navigating to: " + url);
+    // Called by the owning pool thread between captures
+    private void recycleIfDue(BrowserWorker worker) {
+        if (recycleAfterCaptures > 0 && worker.getCaptures() >= recycleAfterCaptures) {
+            recycle(worker, worker.getCaptures() + " captures served");
+        } else if (recycleAfterErrors > 0 && worker.getConsecutiveErrors() >= recycleAfterErrors) {
+            recycle(worker, worker.getConsecutiveErrors() + " failures in a row");
+        } else if (recycleAboveRssBytes > 0) {
+            long rss = worker.rssBytes();
+            if (rss > recycleAboveRssBytes) {
+                recycle(worker, (rss / (1024 * 1024)) + " MB resident");
+            }
+        }
+    }
 
-        page.navigate(url);
+    // The next capture on this thread boots a fresh worker (see currentWorker)
+    private void recycle(BrowserWorker worker, String reason) {
+        log.info("♻️ Recycling browser worker [{}]: {}", worker.getName(), reason);
+        currentWorker.remove();
+        workers.remove(worker);
+        worker.close();
+        recycled.incrementAndGet();
+    }
 
-        if ("about:blank".equals(page.url())) {
-            throw new RuntimeException("Page failed to load (Blank Page).");
+    private BrowserWorker.WarmContext checkout(BrowserWorker worker, CaptureMatrix.Variant first) {
+        BrowserWorker.WarmContext warm = worker.takeIdle(first.profile());
+        if (warm == null) {
+            Browser.NewContextOptions options = new Browser.NewContextOptions()
+                    .setViewportSize(first.viewport().width(), first.viewport().height());
+            if (first.emulatesMobile()) {
+                options.setIsMobile(true).setHasTouch(true);
+            }
+            // Service workers would fetch past the route layer
+            options.setServiceWorkers(ServiceWorkerPolicy.BLOCK);
+            BrowserContext context = worker.getBrowser(first.browser()).newContext(options);
+            try {
+                // Set global timeout
+                context.setDefaultNavigationTimeout(30000);
+                // CSS Freeze: before first paint, for every page and navigation of this context
+                context.addInitScript(FREEZE_SCRIPT);
+                // Shared asset cache + third-party block list (null when both are off)
+                AssetCache.Routing routing = assetCache.attach(context, first.browser());
+                warm = new BrowserWorker.WarmContext(context, context.newPage(), routing);
+            } catch (RuntimeException e) {
+                context.close();
+                throw e;
+            }
         }
+        // The last capture may have left the page at another viewport
+        warm.page.setViewportSize(first.viewport().width(), first.viewport().height());
+        if (warm.routing != null) warm.routing.reset();
+        return warm;
+    }
 
-        // Smart Wait: Try Network Idle, but don't crash if it times out
+    /**
+     * Puts the context back into the worker's pool after clearing what the page left behind:
+     * cookies, permissions, storage of its origin, and the document itself (about:blank).
+     * Contexts that wandered off to another origin (redirects), opened popups or used up
+     * their reuse budget are closed instead; storage of other origins can't be cleared from here.
+     */
+    private void checkin(BrowserWorker worker, CaptureMatrix.Variant first, String url, BrowserWorker.WarmContext warm) {
         try {
-            page.waitForLoadState(LoadState.NETWORKIDLE, new Page.WaitForLoadStateOptions().setTimeout(10000));
-        } catch (TimeoutError e) {
-            System.out.println("Network idle timeout for " + url + ". Taking screenshot anyway...");
+            warm.uses++;
+            if (warm.uses >= contextReuse || warm.context.pages().size() != 1 || !sameOrigin(url, warm.page.url())) {
+                warm.close();
+                return;
+            }
+            warm.page.evaluate(CLEAR_STORAGE_SCRIPT);
+            warm.context.clearCookies();
+            warm.context.clearPermissions();
+            warm.page.navigate("about:blank");
+            worker.putIdle(first.profile(), warm);
+        } catch (RuntimeException e) {
+            warm.close(); // Only an optimisation: the next capture creates a new context
+        }
+    }
+
+    private static boolean sameOrigin(String a, String b) {
+        try {
+            URI x = URI.create(a), y = URI.create(b);
+            return Objects.equals(x.getScheme(), y.getScheme()) && Objects.equals(x.getHost(), y.getHost()) && x.getPort() == y.getPort();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String first(List<CaptureMatrix.Variant> group) {
+        return group.get(0).label();
+    }
+
+    private long[] capture(Page page, String project, String url, List<CaptureMatrix.Variant> group, List<Path> outputPaths,
+                           Readiness readiness, long start, Trace.Span span) {
+        String browser = group.get(0).browser();
+        log.debug("Navigating to: {} [{}]", url, browser);
+
+        long navigating = System.nanoTime();
+        try {
+            page.navigate(url);
+            if ("about:blank".equals(page.url())) {
+                throw new RuntimeException("Page failed to load (Blank Page).");
+            }
+        } catch (RuntimeException e) {
+            long failed = System.nanoTime();
+            metrics.capture("navigation", project, browser, "failure", failed - navigating);
+            span.record("navigation", navigating, failed).note("failed");
+            throw e;
         }
 
-        // CSS Freeze
-        page.evaluate("() => { " +
-                "const style = document.createElement('style');" +
-                "style.innerHTML = '* { transition: none !important; animation: none !important; caret-color: transparent !important; }';" +
-                "document.head.appendChild(style);" +
-                "}");
+        long loaded = System.nanoTime();
+        metrics.capture("navigation", project, browser, "success", loaded - navigating);
+        span.record("navigation", navigating, loaded);
+        boolean reached = awaitReady(page, url, readiness);
+        long ready = System.nanoTime();
+        metrics.capture("readiness", project, browser, reached ? "ready" : "timeout", ready - loaded);
+        span.record("readiness " + readiness.mode(), loaded, ready).note(reached ? null : "timeout after " + readiness.timeoutMillis() + " ms");
+
+        // Screenshot, then resize the SAME page for every further viewport (no second navigation)
+        long[] millis = new long[group.size()];
+        long shotStart = start;
+        for (int i = 0; i < group.size(); i++) {
+            if (i > 0) {
+                CaptureMatrix.Viewport viewport = group.get(i).viewport();
+                page.setViewportSize(viewport.width(), viewport.height());
+                settleAfterResize(page);
+            }
+            long shooting = System.nanoTime();
+            page.screenshot(new Page.ScreenshotOptions().setPath(outputPaths.get(i)).setFullPage(true));
+            long now = System.nanoTime();
+            metrics.capture("screenshot", project, browser, "success", now - shooting);
+            span.record("screenshot " + group.get(i).viewport().name(), shooting, now);
+            millis[i] = TimeUnit.NANOSECONDS.toMillis(now - shotStart);
+            shotStart = now;
+        }
+
+        log.debug("⏱ {} [{}]: loaded in {} ms, ready after {} ms ({})", url, first(group),
+                TimeUnit.NANOSECONDS.toMillis(loaded - start), TimeUnit.NANOSECONDS.toMillis(ready - loaded), readiness.mode());
+        return millis;
+    }
+
+    /**
+     * Waits until the page is ready by the project's rule. A page that never gets there is
+     * still captured after the timeout (the diff will show what is wrong with it). False on timeout.
+     */
+    private boolean awaitReady(Page page, String url, Readiness readiness) {
+        double timeout = readiness.timeoutMillis();
+        try {
+            switch (readiness.mode()) {
+                case NETWORK_IDLE -> page.waitForLoadState(LoadState.NETWORKIDLE, new Page.WaitForLoadStateOptions().setTimeout(timeout));
+                case SELECTOR -> page.waitForSelector(readiness.value(), new Page.WaitForSelectorOptions()
+                        .setState(WaitForSelectorState.VISIBLE).setTimeout(timeout));
+                case SCRIPT -> page.waitForFunction(readiness.value(), null, new Page.WaitForFunctionOptions().setTimeout(timeout));
+                // Polled once per animation frame: a cheap geometry signature must stay the same N frames in a row
+                case LAYOUT_STABLE -> page.waitForFunction(LAYOUT_STABLE_JS, readiness.stableFrames(),
+                        new Page.WaitForFunctionOptions().setTimeout(timeout));
+                case FONTS_READY -> page.waitForFunction("() => document.fonts.status === 'loaded'", null,
+                        new Page.WaitForFunctionOptions().setTimeout(timeout));
+            }
+            return true;
+        } catch (TimeoutError e) {
+            log.info("{} not reached for {} within {} ms. Taking screenshot anyway...", readiness.mode(), url, readiness.timeoutMillis());
+            return false;
+        }
+    }
 
-        // Screenshot
-        page.screenshot(new Page.ScreenshotOptions().setPath(outputPath).setFullPage(true));
+    // Page size plus the boxes of the first 2000 elements; state lives on window between frames
+    private static final String LAYOUT_STABLE_JS = "(frames) => {"
+            + "  const root = document.documentElement;"
+            + "  const els = document.body ? document.body.getElementsByTagName('*') : [];"
+            + "  let sig = root.scrollWidth + 'x' + root.scrollHeight + ':' + els.length;"
+            + "  let h = 0;"
+            + "  for (let i = 0; i < Math.min(els.length, 2000); i++) {"
+            + "    const r = els[i].getBoundingClientRect();"
+            + "    h = (h * 31 + r.x * 3 + r.y * 7 + r.width * 11 + r.height * 13) % 1000000007;"
+            + "  }"
+            + "  sig += ':' + h;"
+            + "  const s = window.__ppLayout || (window.__ppLayout = {sig: null, stable: 0});"
+            + "  s.stable = s.sig === sig ? s.stable + 1 : 0;"
+            + "  s.sig = sig;"
+            + "  return s.stable >= frames;"
+            + "}";
+
+    // Media queries re-apply on the next frame; then wait (max 3s) for images the new size asks for (srcset, lazy).
+    // waitForLoadState would return at once here: the page reached "networkidle" before the resize.
+    private void settleAfterResize(Page page) {
+        page.evaluate("() => new Promise(r => requestAnimationFrame(() => requestAnimationFrame(r)))"
+                + ".then(() => Promise.race(["
+                + "  Promise.all(Array.from(document.images).filter(i => !i.complete).map(i => new Promise(r => {"
+                + "    i.addEventListener('load', r); i.addEventListener('error', r); }))),"
+                + "  new Promise(r => setTimeout(r, 3000))]))");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package com.example.pixelpatrol.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * STREAMING PNG DECODER
+ * Inflates and un-filters one row at a time, so only two rows of raw bytes are
+ * ever held. Supports 8-bit RGB / RGBA, non-interlaced (what Chromium writes).
+ */
+public class PngStripReader implements StripReader {
+
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+
+    private final DataInputStream file;
+    private final Inflater inflater = new Inflater();
+    private final InputStream pixels;
+    private final int width, height, bytesPerPixel;
+    private byte[] previous, current;
+
+    private PngStripReader(DataInputStream file, int firstChunkLength, int width, int height, int bytesPerPixel) {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.pixels = new InflaterInputStream(new IdatStream(firstChunkLength), inflater, 64 * 1024);
+        this.previous = new byte[width * bytesPerPixel];
+        this.current = new byte[width * bytesPerPixel];
+    }
+
+    /**
+     * Returns null (and closes the file) when the PNG uses a layout this decoder doesn't handle.
+     */
+    public static PngStripReader tryOpen(Path path) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024));
+        try {
+            if (in.readLong() != SIGNATURE) { in.close(); return null; }
+
+            // 1. IHDR is always the first chunk
+            in.readInt();
+            if (!"IHDR".equals(chunkType(in))) { in.close(); return null; }
+            int width = in.readInt(), height = in.readInt();
+            int bitDepth = in.readUnsignedByte(), colorType = in.readUnsignedByte();
+            in.readUnsignedByte(); // compression (always deflate)
+            in.readUnsignedByte(); // filter method (always adaptive)
+            int interlace = in.readUnsignedByte();
+            in.readInt();          // CRC
+
+            if (bitDepth != 8 || interlace != 0 || (colorType != 2 && colorType != 6)) {
+                in.close();
+                return null;
+            }
+
+            // 2. Skip ancillary chunks up to the first IDAT (its data is left for the inflater)
+            while (true) {
+                int length = in.readInt();
+                String type = chunkType(in);
+                if ("IDAT".equals(type)) {
+                    return new PngStripReader(in, length, width, height, colorType == 6 ? 4 : 3);
+                }
+                if ("IEND".equals(type)) { in.close(); return null; }
+                in.skipNBytes(length + 4L);
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override public int width() { return width; }
+    @Override public int height() { return height; }
+
+    @Override
+    public void readRows(int[] dest, int offset, int rows) throws IOException {
+        for (int r = 0; r < rows; r++) {
+            int filter = pixels.read();
+            if (filter < 0) throw new EOFException("PNG ended before the last row");
+            readFully(current);
+            unfilter(filter);
+            toArgb(dest, offset + r * width);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    private void readFully(byte[] row) throws IOException {
+        int read = 0;
+        while (read < row.length) {
+            int n = pixels.read(row, read, row.length - read);
+            if (n < 0) throw new EOFException("PNG ended before the last row");
+            read += n;
+        }
+    }
+
+    private void unfilter(int filter) throws IOException {
+        byte[] cur = current, prev = previous;
+        int bpp = bytesPerPixel;
+        switch (filter) {
+            case 0 -> { }
+            case 1 -> { // Sub
+                for (int i = bpp; i < cur.length; i++) cur[i] += cur[i - bpp];
+            }
+            case 2 -> { // Up
+                for (int i = 0; i < cur.length; i++) cur[i] += prev[i];
+            }
+            case 3 -> { // Average
+                for (int i = 0; i < cur.length; i++) {
+                    int left = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    cur[i] += (byte) ((left + (prev[i] & 0xFF)) >>> 1);
+                }
+            }
+            case 4 -> { // Paeth
+                for (int i = 0; i < cur.length; i++) {
+                    int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    int b = prev[i] & 0xFF;
+                    int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    cur[i] += (byte) (pa <= pb && pa <= pc ? a : pb <= pc ? b : c);
+                }
+            }
+            default -> throw new IOException("Invalid PNG filter type " + filter);
+        }
+    }
+
+    private void toArgb(int[] dest, int offset) {
+        byte[] row = current;
+        if (bytesPerPixel == 4) {
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                dest[offset + x] = (row[i + 3] & 0xFF) << 24 | (row[i] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8 | (row[i + 2] & 0xFF);
+            }
+        } else {
+            for (int x = 0, i = 0; x < width; x++, i += 3) {
+                dest[offset + x] = 0xFF000000 | (row[i] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8 | (row[i + 2] & 0xFF);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+
+    private static String chunkType(DataInputStream in) throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The payload of consecutive IDAT chunks as one continuous stream (CRCs are skipped).
+     */
+    private final class IdatStream extends InputStream {
+        private int remaining;
+        private boolean done;
+
+        IdatStream(int firstChunkLength) {
+            this.remaining = firstChunkLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            while (remaining == 0) {
+                if (done) return -1;
+                file.readInt(); // CRC of the previous chunk
+                int length = file.readInt();
+                if (!"IDAT".equals(chunkType(file))) {
+                    done = true;
+                    return -1;
+                }
+                remaining = length;
+            }
+            int n = file.read(buffer, off, Math.min(len, remaining));
+            if (n < 0) throw new EOFException("Truncated IDAT chunk");
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.pixelpatrol.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * STREAMING PNG ENCODER
+ * Writes an 8-bit RGB PNG row by row ("Up" filter), so a 40000px tall diff
+ * never has to exist in memory as one image.
+ */
+public class PngStripWriter implements AutoCloseable {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final DataOutputStream file;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final DeflaterOutputStream idat;
+    private final int width;
+    private byte[] previous, current;
+    private final byte[] filtered;
+
+    public PngStripWriter(Path path, int width, int height) throws IOException {
+        this(Files.newOutputStream(path), width, height);
+    }
+
+    /**
+     * Writes to any stream (e.g. an HTTP response); the stream is closed with the writer.
+     */
+    public PngStripWriter(OutputStream target, int width, int height) throws IOException {
+        this.width = width;
+        this.previous = new byte[width * 3];
+        this.current = new byte[width * 3];
+        this.filtered = new byte[width * 3];
+        this.file = new DataOutputStream(new BufferedOutputStream(target, 64 * 1024));
+
+        file.writeLong(0x89504E470D0A1A0AL);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream ihdr = new DataOutputStream(header);
+        ihdr.writeInt(width);
+        ihdr.writeInt(height);
+        ihdr.write(new byte[]{8, 2, 0, 0, 0}); // 8-bit, truecolor, deflate, adaptive, no interlace
+        writeChunk("IHDR", header.toByteArray(), header.size());
+
+        this.idat = new DeflaterOutputStream(new IdatStream(), deflater, 64 * 1024);
+    }
+
+    /**
+     * Appends 'rows' rows of packed RGB pixels taken from src, starting at 'offset'.
+     */
+    public void writeRows(int[] src, int offset, int rows) throws IOException {
+        for (int r = 0; r < rows; r++) {
+            int from = offset + r * width;
+            for (int x = 0, i = 0; x < width; x++, i += 3) {
+                int rgb = src[from + x];
+                current[i] = (byte) (rgb >> 16);
+                current[i + 1] = (byte) (rgb >> 8);
+                current[i + 2] = (byte) rgb;
+            }
+            idat.write(2); // Up: screenshots are mostly vertical runs of the same color
+            for (int i = 0; i < current.length; i++) filtered[i] = (byte) (current[i] - previous[i]);
+            idat.write(filtered);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            idat.close();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+            file.close();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        file.writeInt(length);
+        file.write(typeBytes);
+        file.write(data, 0, length);
+        file.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Cuts the compressed stream into IDAT chunks of CHUNK_SIZE bytes.
+     */
+    private final class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buffer.length - size);
+                System.arraycopy(data, off, buffer, size, n);
+                size += n;
+                off += n;
+                len -= n;
+                if (size == buffer.length) flushChunk();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (size > 0) flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            writeChunk("IDAT", buffer, size);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.pixelpatrol.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * BACKGROUND REPORTS
+ * PDFs are rendered off the request thread: callers get a job id right away and poll it.
+ * Two requests for the same report (same inputs -> same file name) share one job, and a
+ * report that already exists completes immediately without being rendered again.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportJobService.class);
+
+    private final ReportService reportService;
+    private final ExecutorService executor;
+    private final long keepMillis;
+
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    // Unfinished job per report file name, so identical requests are rendered once
+    private final Map<String, ReportJob> rendering = new HashMap<>();
+
+    public ReportJobService(ReportService reportService,
+                            @Value("${pixelpatrol.report.concurrent-jobs:2}") int concurrentJobs,
+                            @Value("${pixelpatrol.report.keep-days:7}") int keepDays) {
+        this.reportService = reportService;
+        this.keepMillis = TimeUnit.DAYS.toMillis(keepDays);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrentJobs), r -> {
+            Thread t = new Thread(r, "pp-report-job-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static class ReportJob {
+        public final String jobId;
+        public final String filename;
+        public final LocalDateTime createdAt = LocalDateTime.now();
+        public volatile String status = "QUEUED"; // QUEUED -> RUNNING -> COMPLETED | FAILED
+        public volatile boolean cached;
+        private final CompletableFuture<String> done = new CompletableFuture<>();
+
+        ReportJob(String jobId, String filename) {
+            this.jobId = jobId;
+            this.filename = filename;
+        }
+
+        /**
+         * Waits for the report; returns its file name, or null if it failed or took too long.
+         */
+        public String await(long timeout, TimeUnit unit) {
+            try {
+                return done.get(timeout, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | TimeoutException e) {
+                return null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // --- PUBLIC API ---
+
+    public ReportJob submitBatch(List<ReportService.BatchResult> results) {
+        return submit(reportService.batchReportName(results), () -> reportService.generateBatchPdf(results));
+    }
+
+    public ReportJob submitProject(ReportService.BatchResult result) {
+        return submit(reportService.projectReportName(result), () -> reportService.generatePdf(result));
+    }
+
+    public Optional<ReportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private synchronized ReportJob submit(String filename, Supplier<String> render) {
+        ReportJob running = rendering.get(filename);
+        if (running != null) {
+            return running;
+        }
+
+        pruneFinishedJobs();
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), filename);
+        jobs.put(job.jobId, job);
+
+        // 1. Same inputs as an existing report -> nothing to render
+        Path existing = reportService.reportFile(filename);
+        if (existing != null) {
+            existing.toFile().setLastModified(System.currentTimeMillis()); // Still in use: keep it past keep-days
+            job.cached = true;
+            complete(job, filename);
+            return job;
+        }
+
+        // 2. Render in the background
+        rendering.put(filename, job);
+        executor.submit(() -> {
+            job.status = "RUNNING";
+            String result = null;
+            try {
+                result = render.get();
+            } finally {
+                synchronized (this) {
+                    rendering.remove(filename);
+                }
+                complete(job, result);
+            }
+        });
+        return job;
+    }
+
+    private void complete(ReportJob job, String filename) {
+        job.status = filename != null ? "COMPLETED" : "FAILED";
+        job.done.complete(filename);
+    }
+
+    // Only the 100 newest finished jobs stay pollable
+    private void pruneFinishedJobs() {
+        List<ReportJob> finished = jobs.values().stream()
+                .filter(j -> j.done.isDone())
+                .sorted(Comparator.comparing((ReportJob j) -> j.createdAt).reversed())
+                .toList();
+        for (int i = 100; i < finished.size(); i++) {
+            jobs.remove(finished.get(i).jobId);
+        }
+    }
+
+    // Reports are cheap to rebuild from the stored screenshots, so old files are simply dropped
+    @Scheduled(initialDelay = 10, fixedDelay = 360, timeUnit = TimeUnit.MINUTES)
+    public void pruneOldReports() {
+        int deleted = reportService.pruneReports(System.currentTimeMillis() - keepMillis);
+        if (deleted > 0) {
+            log.info("Deleted {} old report files.", deleted);
+        }
+    }
+}
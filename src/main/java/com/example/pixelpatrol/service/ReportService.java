@@ -4,24 +4,73 @@ import com.lowagie.text.*;
 import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.awt.Color;
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class ReportService {
 
+    private static final Logger log = LoggerFactory.getLogger(ReportService.class);
+
     private final String REPORT_DIR = System.getProperty("user.home") + "/.pixelpatrol/reports/";
 
-    public ReportService() {
+    // Layout boxes on an A2 landscape page (points), and how many image pixels we embed per point
+    private static final float SCREENSHOT_BOX_WIDTH = 800f, SCREENSHOT_BOX_HEIGHT = 600f;
+    private static final float DIFF_BOX_WIDTH = 1624f, DIFF_BOX_HEIGHT = 1031f;
+    private static final float PIXELS_PER_POINT = 1.5f;
+
+    private final ThumbnailService thumbnailService;
+    private final PipelineMetrics metrics;
+    private final ExecutorService thumbnailPool;
+    // How many projects ahead of the page being written we prepare thumbnails
+    private final int lookahead;
+
+    public ReportService(ThumbnailService thumbnailService, PipelineMetrics metrics,
+                         @Value("${pixelpatrol.report.threads:0}") int threads) {
+        this.thumbnailService = thumbnailService;
+        this.metrics = metrics;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.thumbnailPool = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "pp-report-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.lookahead = poolSize * 2;
         new java.io.File(REPORT_DIR).mkdirs();
     }
 
+    @PreDestroy
+    public void shutdown() {
+        thumbnailPool.shutdownNow();
+    }
+
     public static class BatchResult {
         public Long projectId;
         public String projectName;
@@ -54,44 +103,173 @@ public class ReportService {
         }
     }
 
+    // --- REPORT NAMES ---
+    // Named after a fingerprint of their inputs: concurrent reports never share a file, and a
+    // report whose results haven't changed already exists and is simply served again.
+
+    public String batchReportName(List<BatchResult> results) {
+        return "Full_Regression_Report_" + fingerprint(results) + ".pdf";
+    }
+
+    public String projectReportName(BatchResult result) {
+        String safeName = result.projectName.replaceAll("[^a-zA-Z0-9.-]", "_");
+        return "Report_" + safeName + "_" + fingerprint(List.of(result)) + ".pdf";
+    }
+
+    private static String fingerprint(List<BatchResult> results) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (BatchResult r : results) {
+                // Store objects are named by content; older files also contribute their mtime
+                String line = r.projectId + "|" + r.projectName + "|" + r.passed + "|" + r.diffPercent + "|" + r.errorMessage
+                        + "|" + version(r.stagingImg) + "|" + version(r.prodImg) + "|" + version(r.diffImg) + "\n";
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest()).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String version(Path file) {
+        if (file == null) return "-";
+        return ArtifactStore.contentHash(file) != null ? file.getFileName().toString() : file + "@" + file.toFile().lastModified();
+    }
+
+    /**
+     * A finished report by name, or null (unknown name, or not inside the reports folder).
+     */
+    public Path reportFile(String filename) {
+        Path dir = Paths.get(REPORT_DIR).normalize();
+        Path file = dir.resolve(filename).normalize();
+        return file.getParent().equals(dir) && Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * Deletes reports (and temp files of crashed renders) older than 'olderThanMillis'.
+     */
+    public int pruneReports(long olderThanMillis) {
+        java.io.File[] files = new java.io.File(REPORT_DIR).listFiles();
+        int deleted = 0;
+        for (java.io.File file : files == null ? new java.io.File[0] : files) {
+            if (file.lastModified() < olderThanMillis && file.delete()) deleted++;
+        }
+        return deleted;
+    }
+
+    // --- RENDERING ---
+
+    /**
+     * STREAMING REPORT
+     * The cover is written first, then one project page at a time: OpenPDF flushes every finished
+     * page to disk, and thumbnails are prepared in parallel a few projects ahead of the writer,
+     * so memory stays flat no matter how many projects the batch has.
+     */
     public String generateBatchPdf(List<BatchResult> results) {
-        String filename = "Full_Regression_Report.pdf";
-        String fullPath = REPORT_DIR + filename;
+        String filename = batchReportName(results);
+        return reportFile(filename) != null ? filename : writePdf(filename, results, true);
+    }
+
+    public String generatePdf(BatchResult result) {
+        String filename = projectReportName(result);
+        return reportFile(filename) != null ? filename : writePdf(filename, List.of(result), false);
+    }
+
+    private String writePdf(String filename, List<BatchResult> results, boolean withCover) {
+        Path target = Paths.get(REPORT_DIR, filename);
+        Path tmp = null;
+        List<Future<Thumbnails>> pending = new ArrayList<>(results.size());
+        String type = withCover ? "batch" : "project";
+        long start = System.nanoTime();
         try {
-            Document document = new Document(PageSize.A2.rotate());
-            document.setMargins(30, 30, 30, 30);
-            PdfWriter.getInstance(document, new FileOutputStream(fullPath));
-            document.open();
-
-            // 1. Pass the FULL list to create the summary table
-            addCoverPage(document, results);
-
-            // 2. Add individual project pages
-            for (BatchResult result : results) {
-                document.newPage();
-                addProjectPage(document, result);
+            // Written next to the target and moved at the end, so a download never gets half a PDF
+            tmp = Files.createTempFile(Paths.get(REPORT_DIR), "report-", ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                Document document = new Document(PageSize.A2.rotate());
+                document.setMargins(30, 30, 30, 30);
+                PdfWriter.getInstance(document, out);
+                document.open();
+
+                // 1. Pass the FULL list to create the summary table
+                if (withCover) {
+                    addCoverPage(document, results);
+                }
+
+                // 2. Add individual project pages, in order, while later thumbnails are still being made
+                PdfImages images = new PdfImages();
+                int submitted = 0;
+                for (int i = 0; i < results.size(); i++) {
+                    while (submitted < results.size() && submitted <= i + lookahead) {
+                        BatchResult next = results.get(submitted++);
+                        pending.add(thumbnailPool.submit(() -> thumbnails(next)));
+                    }
+                    Thumbnails thumbs = pending.get(i).get();
+                    pending.set(i, null);
+
+                    if (withCover || i > 0) document.newPage();
+                    addProjectPage(document, results.get(i), thumbs, images);
+                }
+                document.close();
             }
-            document.close();
+
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            metrics.report(type, "success", System.nanoTime() - start);
             return filename;
-        } catch (Exception e) { e.printStackTrace(); return null; }
+        } catch (Exception e) {
+            log.error("Could not write report {}", filename, e);
+            metrics.report(type, "failure", System.nanoTime() - start);
+            pending.forEach(f -> { if (f != null) f.cancel(true); });
+            return null;
+        } finally {
+            if (tmp != null) {
+                try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+            }
+        }
     }
 
-    public String generatePdf(String projectName, Path stagingImg, Path prodImg, Path diffImg, boolean passed) {
-        String safeName = projectName.replaceAll("[^a-zA-Z0-9.-]", "_");
-        String filename = "Report_" + safeName + ".pdf";
-        String fullPath = REPORT_DIR + filename;
+    // Downscaled copies of one project's images (null = unavailable)
+    private record Thumbnails(Path staging, Path prod, Path diff) {}
+
+    private Thumbnails thumbnails(BatchResult result) {
+        if (result.errorMessage != null) return new Thumbnails(null, null, null);
+        return new Thumbnails(
+                thumbnail(result.stagingImg, SCREENSHOT_BOX_WIDTH, SCREENSHOT_BOX_HEIGHT),
+                thumbnail(result.prodImg, SCREENSHOT_BOX_WIDTH, SCREENSHOT_BOX_HEIGHT),
+                result.passed ? null : thumbnail(result.diffImg, DIFF_BOX_WIDTH, DIFF_BOX_HEIGHT));
+    }
+
+    // Rendered at 1.5x the size it's shown at: sharp when zoomed in, a fraction of the original's bytes
+    private Path thumbnail(Path image, float boxWidth, float boxHeight) {
+        if (image == null) return null;
         try {
-            Document document = new Document(PageSize.A2.rotate());
-            document.setMargins(30, 30, 30, 30);
-            PdfWriter.getInstance(document, new FileOutputStream(fullPath));
-            document.open();
+            return thumbnailService.thumbnail(image, Math.round(boxWidth * PIXELS_PER_POINT), Math.round(boxHeight * PIXELS_PER_POINT));
+        } catch (Exception e) {
+            log.warn("Could not scale {} for the report", image.getFileName(), e);
+            return null;
+        }
+    }
 
-            BatchResult result = new BatchResult(0L, projectName, stagingImg, prodImg, diffImg, passed, 0.0f);
-            addProjectPage(document, result);
+    /**
+     * Images already written to this PDF. Adding the same Image instance again only references
+     * the existing XObject, so a screenshot shown twice (identical staging/prod, shared baseline)
+     * is embedded once. Bounded (LRU): repeats are almost always close together.
+     */
+    private static class PdfImages extends LinkedHashMap<Path, Image> {
+        PdfImages() { super(16, 0.75f, true); }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Image> eldest) {
+            return size() > 32;
+        }
 
-            document.close();
-            return filename;
-        } catch (Exception e) { e.printStackTrace(); return null; }
+        Image get(Path thumbnail) throws IOException {
+            Image img = super.get(thumbnail);
+            if (img == null) {
+                img = Image.getInstance(thumbnail.toString());
+                put(thumbnail, img);
+            }
+            return img;
+        }
     }
 
     // --- UPDATED COVER PAGE WITH SUMMARY TABLE ---
@@ -165,8 +343,8 @@ public class ReportService {
         table.addCell(cell);
     }
 
-    // --- INDIVIDUAL PROJECT PAGES (Kept same as before) ---
-    private void addProjectPage(Document doc, BatchResult result) throws DocumentException {
+    // --- INDIVIDUAL PROJECT PAGES ---
+    private void addProjectPage(Document doc, BatchResult result, Thumbnails thumbs, PdfImages images) throws DocumentException {
         // ... (Header Section)
         Font headerFont = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 32);
         Paragraph pTitle = new Paragraph("Project: " + result.projectName, headerFont);
@@ -192,23 +370,21 @@ public class ReportService {
         table.setWidthPercentage(100);
         table.setSpacingBefore(20);
 
-        addCellWithImage(table, "Staging (Original)", result.stagingImg, 600f);
-        addCellWithImage(table, "Production (Original)", result.prodImg, 600f);
+        addCellWithImage(table, "Staging (Original)", thumbs.staging(), images);
+        addCellWithImage(table, "Production (Original)", thumbs.prod(), images);
         doc.add(table);
 
         // ... (Diff Map Page 2)
-        if (!result.passed && result.diffImg != null) {
+        if (!result.passed && thumbs.diff() != null) {
             doc.newPage();
-            Paragraph diffHeader = new Paragraph("Difference Map (Full Resolution Detail)", FontFactory.getFont(FontFactory.HELVETICA, 24));
+            Paragraph diffHeader = new Paragraph("Difference Map", FontFactory.getFont(FontFactory.HELVETICA, 24));
             diffHeader.setAlignment(Element.ALIGN_CENTER);
             diffHeader.setSpacingAfter(20);
             doc.add(diffHeader);
 
             try {
-                Image img = Image.getInstance(result.diffImg.toString());
-                float pageWidth = doc.getPageSize().getWidth() - doc.leftMargin() - doc.rightMargin();
-                float pageHeight = doc.getPageSize().getHeight() - doc.topMargin() - doc.bottomMargin() - 100;
-                img.scaleToFit(pageWidth, pageHeight);
+                Image img = images.get(thumbs.diff());
+                img.scaleToFit(DIFF_BOX_WIDTH, DIFF_BOX_HEIGHT);
                 img.setAlignment(Element.ALIGN_CENTER);
                 img.setBorder(Rectangle.BOX);
                 img.setBorderWidth(1);
@@ -218,7 +394,7 @@ public class ReportService {
         }
     }
 
-    private void addCellWithImage(PdfPTable table, String title, Path imgPath, float maxHeight) {
+    private void addCellWithImage(PdfPTable table, String title, Path thumbnail, PdfImages images) {
         PdfPCell cell = new PdfPCell();
         cell.setBorder(Rectangle.NO_BORDER);
         cell.setPadding(10);
@@ -226,10 +402,10 @@ public class ReportService {
         p.setAlignment(Element.ALIGN_CENTER);
         cell.addElement(p);
 
-        if (imgPath != null) {
+        if (thumbnail != null) {
             try {
-                Image img = Image.getInstance(imgPath.toString());
-                img.scaleToFit(800, maxHeight);
+                Image img = images.get(thumbnail);
+                img.scaleToFit(SCREENSHOT_BOX_WIDTH, SCREENSHOT_BOX_HEIGHT);
                 img.setAlignment(Element.ALIGN_CENTER);
                 img.setBorder(Rectangle.BOX);
                 img.setBorderWidth(1);
@@ -240,4 +416,4 @@ public class ReportService {
         }
         table.addCell(cell);
     }
-}
\ No newline at end of file
+}
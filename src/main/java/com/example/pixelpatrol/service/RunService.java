@@ -0,0 +1,529 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.model.Project;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * SERVER-SIDE RUN ENGINE
+ * Batch runs are queued here instead of being driven by the browser tab,
+ * so closing the dashboard no longer kills a run.
+ */
+@Service
+public class RunService {
+
+    private static final Logger log = LoggerFactory.getLogger(RunService.class);
+
+    private final PlaywrightService playwrightService;
+    private final ComparisonService comparisonService;
+    private final HistoryService historyService;
+    private final BaselineService baselineService;
+
+    // Bounded job queue: one entry per project waiting to be tested
+    private final BlockingQueue<RunItem> jobQueue;
+    // Limits how many projects are tested at the same time
+    private final Semaphore slots;
+    // Events a live subscriber may fall behind before it is dropped (it reconnects and gets a fresh snapshot)
+    private static final int SUBSCRIBER_BACKLOG = 1024;
+    // Virtual threads: a waiting project costs a few hundred bytes, not a whole OS thread
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, RunJob> runs = new ConcurrentHashMap<>();
+    private Thread dispatcher;
+
+    public RunService(PlaywrightService playwrightService, ComparisonService comparisonService, HistoryService historyService,
+                      BaselineService baselineService,
+                      @Value("${pixelpatrol.runs.queue-capacity:10000}") int queueCapacity,
+                      @Value("${pixelpatrol.runs.concurrency:0}") int concurrency) {
+        this.playwrightService = playwrightService;
+        this.comparisonService = comparisonService;
+        this.historyService = historyService;
+        this.baselineService = baselineService;
+        this.jobQueue = new LinkedBlockingQueue<>(queueCapacity);
+        // 0 = auto: keep every browser worker busy (each project needs 2 captures)
+        this.slots = new Semaphore(concurrency > 0 ? concurrency : playwrightService.getWorkerCount());
+    }
+
+    // --- RESULT / JOB HOLDERS ---
+
+    public static class ProjectResult {
+        public Long projectId;
+        public String projectName;
+        public String status;       // PASS, FAIL or ERROR
+        public float diffPercent;
+        public String message;
+        public String stagingImg;
+        public String prodImg;
+        public String diffImg;
+        public String reportUrl;
+        public LocalDateTime startedAt;
+        public LocalDateTime finishedAt;
+        public long captureMillis;
+        public long compareMillis;
+        // Wall time of each page (null: not captured in this run, e.g. a baseline)
+        public Long stagingCaptureMillis;
+        public Long prodCaptureMillis;
+        // Capture matrix: browser/viewport of these images (null for the default capture), and for a
+        // project with several variants the result of each one (this result then shows the worst)
+        public String variant;
+        public List<ProjectResult> variants;
+        // Span tree of the whole test (all variants); set on the result of the project, not on its variants
+        public Trace.Span trace;
+
+        // Full artifact locations (persisted in history, not sent to the UI)
+        @JsonIgnore public Path stagingPath;
+        @JsonIgnore public Path prodPath;
+        @JsonIgnore public Path diffPath;
+
+        public static ProjectResult error(Project project, String message) {
+            ProjectResult r = new ProjectResult();
+            r.projectId = project.getId();
+            r.projectName = project.getName();
+            r.status = "ERROR";
+            r.message = message;
+            r.finishedAt = LocalDateTime.now();
+            return r;
+        }
+    }
+
+    /**
+     * Progress of one project, pushed to live subscribers (Server-Sent Events).
+     * type: queued, capturing, comparing, done (with result) or completed (whole run).
+     */
+    public record RunEvent(String type, Long projectId, String projectName, ProjectResult result, int completed, int total) {}
+
+    public static class RunJob {
+        public final String runId;
+        public final int total;
+        public final LocalDateTime createdAt = LocalDateTime.now();
+        public volatile String status = "QUEUED"; // QUEUED -> RUNNING -> COMPLETED
+        private final AtomicInteger completed = new AtomicInteger();
+        // Insertion ordered by completion time, so pollers can read "what's new"
+        private final List<ProjectResult> results = Collections.synchronizedList(new ArrayList<>());
+        // projectId -> QUEUED, CAPTURING, COMPARING or DONE
+        private final Map<Long, String> phases = new ConcurrentHashMap<>();
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        // Orders events against subscriptions. Held only to change the state and queue the event
+        // (never blocks), sending happens on every subscriber's own thread
+        private final ReentrantLock eventLock = new ReentrantLock();
+
+        RunJob(String runId, int total) {
+            this.runId = runId;
+            this.total = total;
+        }
+
+        public int getCompleted() { return completed.get(); }
+
+        public List<ProjectResult> getResults() {
+            synchronized (results) { return new ArrayList<>(results); }
+        }
+
+        public Map<Long, String> getPhases() { return new TreeMap<>(phases); }
+
+        /**
+         * Takes a snapshot of the current state, then queues it for 'onSnapshot' followed by every
+         * later event for 'listener'. Nothing can happen in between, so a subscriber never misses
+         * or double counts a project. Both are called on the subscriber's own thread: a slow one
+         * never holds up the run or the other subscribers. A subscriber that throws, or falls
+         * SUBSCRIBER_BACKLOG events behind, is dropped and 'onDropped' is called.
+         */
+        public <S> Subscription subscribe(Function<RunJob, S> snapshot, Consumer<S> onSnapshot,
+                                          Consumer<RunEvent> listener, Runnable onDropped) {
+            eventLock.lock();
+            try {
+                S state = snapshot.apply(this);
+                Subscription subscription = new Subscription(listener, onDropped);
+                subscription.offer(() -> onSnapshot.accept(state));
+                if ("COMPLETED".equals(status)) {
+                    subscription.finish();
+                } else {
+                    subscriptions.add(subscription);
+                }
+                return subscription;
+            } finally {
+                eventLock.unlock();
+            }
+        }
+
+        public void unsubscribe(Subscription subscription) {
+            subscription.cancel();
+        }
+
+        /**
+         * One live subscriber: a bounded queue of deliveries, sent one by one by its own virtual thread.
+         */
+        public final class Subscription {
+            private final BlockingQueue<Runnable> deliveries = new ArrayBlockingQueue<>(SUBSCRIBER_BACKLOG);
+            private final Consumer<RunEvent> listener;
+            private final Runnable onDropped;
+            private final Thread sender;
+            private volatile boolean cancelled;
+
+            private Subscription(Consumer<RunEvent> listener, Runnable onDropped) {
+                this.listener = listener;
+                this.onDropped = onDropped;
+                this.sender = Thread.ofVirtual().name("pp-run-events-" + runId).start(this::send);
+            }
+
+            private void send() {
+                try {
+                    while (!cancelled) {
+                        Runnable delivery = deliveries.take();
+                        if (delivery == END) return;
+                        delivery.run();
+                    }
+                } catch (InterruptedException e) {
+                    // cancelled
+                } catch (RuntimeException e) {
+                    drop();
+                }
+            }
+
+            // Never blocks: a subscriber that can't keep up is dropped instead
+            private void offer(Runnable delivery) {
+                if (!deliveries.offer(delivery)) drop();
+            }
+
+            private void deliver(RunEvent event) {
+                offer(() -> listener.accept(event));
+            }
+
+            // Everything queued so far is still sent, then the thread ends
+            private void finish() {
+                subscriptions.remove(this);
+                if (!deliveries.offer(END)) drop();
+            }
+
+            public void cancel() {
+                cancelled = true;
+                subscriptions.remove(this);
+                sender.interrupt();
+            }
+
+            private void drop() {
+                if (cancelled) return;
+                cancel();
+                try {
+                    onDropped.run();
+                } catch (RuntimeException ignored) {
+                    // the subscriber is gone anyway
+                }
+            }
+        }
+
+        void phase(Project project, String phase) {
+            publish(() -> phases.put(project.getId(), phase),
+                    () -> new RunEvent(phase.toLowerCase(), project.getId(), project.getName(), null, completed.get(), total));
+        }
+
+        // Returns true for the last project of the run
+        boolean projectDone(ProjectResult result) {
+            boolean[] last = new boolean[1];
+            publish(() -> {
+                results.add(result);
+                phases.put(result.projectId, "DONE");
+                last[0] = completed.incrementAndGet() == total;
+            }, () -> new RunEvent("done", result.projectId, result.projectName, result, completed.get(), total));
+            return last[0];
+        }
+
+        void runCompleted() {
+            publish(() -> status = "COMPLETED", () -> new RunEvent("completed", null, null, null, completed.get(), total));
+        }
+
+        private void publish(Runnable change, Supplier<RunEvent> event) {
+            eventLock.lock();
+            try {
+                change.run();
+                if (subscriptions.isEmpty()) return;
+                RunEvent e = event.get();
+                boolean last = "completed".equals(e.type());
+                for (Subscription subscription : List.copyOf(subscriptions)) {
+                    subscription.deliver(e);
+                    if (last) subscription.finish();
+                }
+            } finally {
+                eventLock.unlock();
+            }
+        }
+    }
+
+    // Marks the end of a subscription's queue
+    private static final Runnable END = () -> {};
+
+    private record RunItem(RunJob job, Project project) {}
+
+    // --- LIFECYCLE ---
+
+    @PostConstruct
+    public void start() {
+        dispatcher = Thread.ofVirtual().name("pp-run-dispatcher").start(this::dispatchLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (dispatcher != null) dispatcher.interrupt();
+        executor.shutdownNow();
+    }
+
+    private void dispatchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                RunItem item = jobQueue.take();
+                slots.acquire();
+                executor.submit(() -> {
+                    try {
+                        item.job.status = "RUNNING";
+                        ProjectResult result = executeProject(item.project, item.job);
+                        boolean last = item.job.projectDone(result);
+                        persist(() -> historyService.record(item.job.runId, result));
+                        if (last) {
+                            persist(() -> historyService.finishRun(item.job.runId));
+                            item.job.runCompleted();
+                        }
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            // Executor was shut down -> application is stopping
+        }
+    }
+
+    // --- PUBLIC API ---
+
+    /**
+     * Queues every project and returns immediately.
+     * Throws IllegalStateException if the queue cannot take the whole batch.
+     */
+    public synchronized RunJob submit(Long collectionId, List<Project> projects) {
+        if (jobQueue.remainingCapacity() < projects.size()) {
+            throw new IllegalStateException("Run queue is full (" + jobQueue.size() + " projects waiting). Try again later.");
+        }
+
+        pruneFinishedRuns();
+        RunJob job = new RunJob(UUID.randomUUID().toString(), projects.size());
+        historyService.startRun(job.runId, collectionId, projects.size());
+        if (projects.isEmpty()) {
+            historyService.finishRun(job.runId);
+            job.status = "COMPLETED";
+        }
+        runs.put(job.runId, job);
+
+        for (Project project : projects) {
+            job.phase(project, "QUEUED");
+            jobQueue.offer(new RunItem(job, project));
+        }
+        return job;
+    }
+
+    public Optional<RunJob> getRun(String runId) {
+        return Optional.ofNullable(runs.get(runId));
+    }
+
+    /**
+     * Single "Run" click: executed on the caller's thread but still recorded as a run of 1.
+     */
+    public ProjectResult runSingle(Project project) {
+        String runId = UUID.randomUUID().toString();
+        historyService.startRun(runId, null, 1);
+        ProjectResult result = executeProject(project, null);
+        persist(() -> historyService.record(runId, result));
+        persist(() -> historyService.finishRun(runId));
+        return result;
+    }
+
+    // Result of a task on the run executor, failing with the task's own exception
+    private static <T> T join(Future<T> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // A broken history write must never turn a finished test into a hung run
+    private void persist(Runnable write) {
+        try {
+            write.run();
+        } catch (Exception e) {
+            log.error("Could not save run history", e);
+        }
+    }
+
+    /**
+     * Capture + Compare for ONE project. Never throws: failures come back as an ERROR result.
+     */
+    public ProjectResult executeProject(Project project) {
+        return executeProject(project, null);
+    }
+
+    // 'job' (optional) receives the capturing / comparing progress events
+    private ProjectResult executeProject(Project project, RunJob job) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        Trace.Span trace = Trace.Span.root(project.getName());
+        try {
+            if (job != null) job.phase(project, "CAPTURING");
+            // A. Capture every browser x viewport (baseline mode: staging only, in the variant the baseline was taken in)
+            List<CaptureMatrix.Variant> matrix = CaptureMatrix.of(project);
+            PlaywrightService.Readiness readiness = PlaywrightService.Readiness.of(project);
+            long t0 = System.nanoTime();
+            Trace.Span capturing = trace.start("capture");
+            Map<CaptureMatrix.Variant, PlaywrightService.Capture[]> captures;
+            try {
+                if (project.isBaselineMode()) {
+                    CaptureMatrix.Variant primary = matrix.get(0);
+                    // A missing or expired baseline is captured from production at the same time as staging
+                    Trace.Span baseline = capturing.start("prod baseline");
+                    Future<Path> baselineTask = executor.submit(() -> {
+                        try {
+                            return baselineService.baselineFor(project);
+                        } finally {
+                            baseline.end();
+                        }
+                    });
+                    PlaywrightService.Capture staging;
+                    try {
+                        staging = playwrightService.captureScreenshot(project.getId(), project.getStagingUrl(),
+                                primary, readiness, capturing.start("staging " + primary.label()));
+                    } catch (RuntimeException e) {
+                        // The next run reuses the baseline, and its span has to end before the trace does
+                        try { baselineTask.get(); } catch (ExecutionException ignored) {}
+                        throw e;
+                    }
+                    captures = Map.of(primary, new PlaywrightService.Capture[]{staging, new PlaywrightService.Capture(join(baselineTask), -1)});
+                } else {
+                    captures = playwrightService.captureMatrix(project.getId(), project.getStagingUrl(), project.getProductionUrl(),
+                            matrix, readiness, capturing);
+                }
+            } finally {
+                capturing.end();
+            }
+            long captureMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+            // B. Compare each variant
+            if (job != null) job.phase(project, "COMPARING");
+            ComparisonService.Settings settings = ComparisonService.Settings.of(project);
+            boolean labelled = !CaptureMatrix.isDefault(new ArrayList<>(captures.keySet()));
+            List<ProjectResult> variants = new ArrayList<>();
+            for (Map.Entry<CaptureMatrix.Variant, PlaywrightService.Capture[]> capture : captures.entrySet()) {
+                long t1 = System.nanoTime();
+                PlaywrightService.Capture[] pages = capture.getValue();
+                Path[] images = {pages[0].path(), pages[1].path()};
+                Trace.Span comparing = trace.start("compare " + capture.getKey().label());
+                ComparisonService.DiffResult diff;
+                try {
+                    diff = comparisonService.compareAndGetDiff(project.getId(), images[0], images[1], settings, comparing);
+                } finally {
+                    comparing.end();
+                }
+
+                ProjectResult r = compared(project, images, diff);
+                r.stagingCaptureMillis = pages[0].millis() >= 0 ? pages[0].millis() : null;
+                r.prodCaptureMillis = pages[1].millis() >= 0 ? pages[1].millis() : null;
+                r.variant = labelled ? capture.getKey().label() : null;
+                r.startedAt = startedAt;
+                r.finishedAt = LocalDateTime.now();
+                r.captureMillis = captureMillis; // One capture pass for the whole matrix
+                r.compareMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t1);
+                variants.add(r);
+            }
+            ProjectResult result = variants.size() == 1 ? variants.get(0) : worstOf(variants);
+            result.trace = trace.end();
+            return result;
+
+        } catch (RuntimeException e) {
+            log.warn("Test of {} failed: {}", project.getName(), Trace.summary(e.getMessage()), e);
+            ProjectResult r = ProjectResult.error(project, e.getMessage());
+            r.startedAt = startedAt;
+            r.trace = trace.end("error");
+            return r;
+        } catch (Exception e) {
+            log.error("Test of {} failed", project.getName(), e);
+            ProjectResult r = ProjectResult.error(project, "System Error");
+            r.startedAt = startedAt;
+            r.trace = trace.end("error");
+            return r;
+        }
+    }
+
+    private static ProjectResult compared(Project project, Path[] images, ComparisonService.DiffResult diff) {
+        // Match = identical, or within the project's pass threshold
+        boolean isMatch = diff.passed;
+        // The overlay is composed on demand from the compact artifact under this name
+        String diffFileName = diff.diffPath == null ? "" : DiffArtifact.imageName(diff.diffPath);
+
+        ProjectResult r = new ProjectResult();
+        r.projectId = project.getId();
+        r.projectName = project.getName();
+        r.status = isMatch ? "PASS" : "FAIL";
+        r.diffPercent = diff.diffPercent;
+        r.message = !isMatch ? "Differences Detected!" : diff.diffPercent == 0.0f ? "UI is Identical" : "Within Tolerance";
+        r.stagingImg = images[0].getFileName().toString();
+        r.prodImg = images[1].getFileName().toString();
+        r.diffImg = diffFileName;
+        r.reportUrl = "/api/generate-report/" + project.getId() + "/" + r.stagingImg + "/" + r.prodImg + "?diff=" + diffFileName;
+        r.stagingPath = images[0];
+        r.prodPath = images[1];
+        r.diffPath = diff.diffPath;
+        return r;
+    }
+
+    // Same threshold for every variant -> the highest diff is the one that fails first
+    private static ProjectResult worstOf(List<ProjectResult> variants) {
+        ProjectResult worst = variants.stream().max(Comparator.comparingDouble((ProjectResult v) -> v.diffPercent)).orElseThrow();
+        long failed = variants.stream().filter(v -> "FAIL".equals(v.status)).count();
+
+        ProjectResult r = new ProjectResult();
+        r.projectId = worst.projectId;
+        r.projectName = worst.projectName;
+        r.status = worst.status;
+        r.diffPercent = worst.diffPercent;
+        r.message = failed > 0 ? "Differences Detected in " + failed + " of " + variants.size() + " variants!" : worst.message;
+        r.stagingImg = worst.stagingImg;
+        r.prodImg = worst.prodImg;
+        r.diffImg = worst.diffImg;
+        r.reportUrl = worst.reportUrl;
+        r.stagingPath = worst.stagingPath;
+        r.prodPath = worst.prodPath;
+        r.diffPath = worst.diffPath;
+        r.startedAt = worst.startedAt;
+        r.finishedAt = variants.get(variants.size() - 1).finishedAt;
+        r.captureMillis = worst.captureMillis;
+        r.stagingCaptureMillis = worst.stagingCaptureMillis;
+        r.prodCaptureMillis = worst.prodCaptureMillis;
+        r.compareMillis = variants.stream().mapToLong(v -> v.compareMillis).sum();
+        r.variant = worst.variant;
+        r.variants = variants;
+        return r;
+    }
+
+    // Keep memory flat on long-running desktops: only the 50 newest finished runs stay pollable
+    private void pruneFinishedRuns() {
+        List<RunJob> finished = runs.values().stream()
+                .filter(r -> "COMPLETED".equals(r.status))
+                .sorted(Comparator.comparing((RunJob r) -> r.createdAt).reversed())
+                .toList();
+        for (int i = 50; i < finished.size(); i++) {
+            runs.remove(finished.get(i).runId);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.pixelpatrol.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Reads an image top to bottom, a few rows at a time, without ever holding
+ * the whole raster in memory. Used for very tall full-page screenshots.
+ */
+public interface StripReader extends AutoCloseable {
+
+    int width();
+
+    int height();
+
+    /**
+     * Reads the NEXT 'rows' rows as packed ARGB into dest, starting at 'offset'.
+     */
+    void readRows(int[] dest, int offset, int rows) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Own PNG decoder for the 8-bit RGB/RGBA files browsers produce, ImageIO for anything else.
+     */
+    static StripReader open(Path path) throws IOException {
+        StripReader png = PngStripReader.tryOpen(path);
+        return png != null ? png : new ImageIo(path);
+    }
+
+    /**
+     * Fallback via ImageIO source regions. Memory stays bounded, but formats without
+     * random access (PNG) are re-decoded up to the requested strip on every call.
+     */
+    final class ImageIo implements StripReader {
+        private final ImageInputStream in;
+        private final ImageReader reader;
+        private final int width, height;
+        private int nextRow;
+
+        ImageIo(Path path) throws IOException {
+            in = ImageIO.createImageInputStream(path.toFile());
+            if (in == null) throw new IOException("Cannot open " + path.getFileName());
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                in.close();
+                throw new IOException("Unsupported image format: " + path.getFileName());
+            }
+            reader = readers.next();
+            reader.setInput(in, true, true);
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+        }
+
+        @Override public int width() { return width; }
+        @Override public int height() { return height; }
+
+        @Override
+        public void readRows(int[] dest, int offset, int rows) throws IOException {
+            if (rows <= 0) return;
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, nextRow, width, rows));
+            reader.read(0, param).getRGB(0, 0, width, rows, dest, offset, width);
+            nextRow += rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            in.close();
+        }
+    }
+}
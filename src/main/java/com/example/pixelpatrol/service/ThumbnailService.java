@@ -0,0 +1,220 @@
+package com.example.pixelpatrol.service;
+
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * THUMBNAILS
+ * Downscaled copies of screenshots and diff overlays, cached on disk by content hash and size:
+ * ~/.pixelpatrol/thumbs/<sha256>_<w>x<h>.jpg (screenshots) or .png (diff overlays, keeps the red crisp).
+ * Sources are decoded with ImageIO subsampling and diff overlays are subsampled while they are composed,
+ * so a huge page never has to be fully in memory.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private final Path dir = Paths.get(System.getProperty("user.home"), ".pixelpatrol", "thumbs");
+    private final ArtifactStore artifactStore;
+
+    public ThumbnailService(ArtifactStore artifactStore) {
+        this.artifactStore = artifactStore;
+        dir.toFile().mkdirs();
+    }
+
+    /**
+     * A copy of 'source' that fits in maxWidth x maxHeight (never upscaled).
+     * 'source' is a screenshot, or a diff manifest which is composed first.
+     */
+    public Path thumbnail(Path source, int maxWidth, int maxHeight) throws IOException {
+        boolean diff = isDiff(source);
+        // A diff overlay is named after its manifest ("..._DIFF.png" itself is not a file)
+        Path key = diff ? manifest(source) : source;
+        String hash = ArtifactStore.contentHash(key);
+        if (hash == null) hash = ComparisonService.sha256(key);
+        Path thumb = dir.resolve(hash + "_" + maxWidth + "x" + maxHeight + (diff ? ".png" : ".jpg"));
+        if (Files.exists(thumb)) return thumb;
+
+        BufferedImage scaled;
+        if (diff) {
+            scaled = downscaleDiff(manifest(source), maxWidth, maxHeight);
+        } else {
+            try (InputStream in = Files.newInputStream(source)) {
+                scaled = downscale(in, maxWidth, maxHeight);
+            }
+        }
+
+        // Temp file + atomic move: two reports asking for the same thumbnail never see half a file
+        Path tmp = Files.createTempFile(dir, hash, ".tmp");
+        try {
+            if (diff) {
+                ImageIO.write(scaled, "png", tmp.toFile());
+            } else {
+                writeJpeg(scaled, tmp);
+            }
+            Files.move(tmp, thumb, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return thumb;
+    }
+
+    /**
+     * The full-size diff overlay of a manifest (or "..._DIFF.png" name) as a PNG file, composed strip
+     * by strip on first use and kept next to the thumbnails (<sha256>_full.png), so it can be served
+     * like any other file (ranges, sendfile) and is pruned with them.
+     */
+    public Path overlay(Path source) throws IOException {
+        Path manifest = manifest(source);
+        String hash = ArtifactStore.contentHash(manifest);
+        if (hash == null) hash = ComparisonService.sha256(manifest);
+        Path overlay = dir.resolve(hash + "_full.png");
+        if (Files.exists(overlay)) return overlay;
+
+        Path tmp = Files.createTempFile(dir, hash, ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                DiffArtifact.compose(manifest, artifactStore, out);
+            }
+            Files.move(tmp, overlay, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return overlay;
+    }
+
+    /**
+     * Deletes thumbnails of images that are gone, once they are older than 'olderThanMillis'.
+     */
+    public int prune(Set<String> keepHashes, long olderThanMillis) {
+        File[] files = dir.toFile().listFiles();
+        int deleted = 0;
+        for (File file : files == null ? new File[0] : files) {
+            int sep = file.getName().indexOf('_');
+            String hash = sep > 0 ? file.getName().substring(0, sep) : file.getName();
+            if (!keepHashes.contains(hash) && file.lastModified() < olderThanMillis && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    // Diff artifacts are referenced by their manifest, or by the "..._DIFF.png" name the UI uses
+    private boolean isDiff(Path source) {
+        return source.toString().endsWith(".json") || DiffArtifact.manifestForImage(source, artifactStore) != null;
+    }
+
+    private Path manifest(Path source) {
+        return source.toString().endsWith(".json") ? source : DiffArtifact.manifestForImage(source, artifactStore);
+    }
+
+    private static BufferedImage downscale(InputStream source, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0), height = reader.getHeight(0);
+                int[] target = targetSize(width, height, maxWidth, maxHeight);
+
+                // 1. Skip rows/columns while decoding, but keep 2x the target so the final scale still smooths
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = subsampling(width, height, target);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return smoothScale(reader.read(0, param), target);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Same as downscale, for a diff overlay: it is composed strip by strip and only every step-th
+     * row / column is kept, so neither the full overlay nor its PNG is ever in memory.
+     */
+    private BufferedImage downscaleDiff(Path manifestPath, int maxWidth, int maxHeight) throws IOException {
+        DiffArtifact.Manifest m = DiffArtifact.read(manifestPath);
+        int width = m.width(), height = m.height();
+        int[] target = targetSize(width, height, maxWidth, maxHeight);
+        int step = subsampling(width, height, target);
+
+        // 1. Subsample while composing
+        int sampledWidth = (width + step - 1) / step;
+        BufferedImage sampled = new BufferedImage(sampledWidth, (height + step - 1) / step, BufferedImage.TYPE_INT_RGB);
+        int[] out = PixelDiffEngine.pixels(sampled);
+        int[] y = {0};
+        DiffArtifact.compose(manifestPath, m, artifactStore, (pixels, count) -> {
+            for (int r = 0; r < count; r++, y[0]++) {
+                if (y[0] % step != 0) continue;
+                int to = (y[0] / step) * sampledWidth, from = r * width;
+                for (int x = 0; x < sampledWidth; x++) {
+                    out[to + x] = pixels[from + x * step];
+                }
+            }
+        });
+
+        // 2. Smooth scale to the exact size
+        return smoothScale(sampled, target);
+    }
+
+    // {width, height} that fits in maxWidth x maxHeight, never upscaled
+    private static int[] targetSize(int width, int height, int maxWidth, int maxHeight) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / width, (double) maxHeight / height));
+        return new int[]{Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale))};
+    }
+
+    private static int subsampling(int width, int height, int[] target) {
+        return Math.max(1, Math.min(width / target[0], height / target[1]) / 2);
+    }
+
+    // RGB: JPEG has no alpha
+    private static BufferedImage smoothScale(BufferedImage source, int[] target) {
+        BufferedImage scaled = new BufferedImage(target[0], target[1], BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, target[0], target[1], null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (OutputStream out = Files.newOutputStream(target);
+             ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.pixelpatrol.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * TILE HASH CACHE
+ * Tile hashes of a screenshot, keyed by the SHA-256 of the PNG file.
+ * An unchanged production screenshot is therefore hashed once and then
+ * reused by every following run without being decoded again.
+ */
+public class TileHashStore {
+
+    private static final Logger log = LoggerFactory.getLogger(TileHashStore.class);
+
+    private static final int MAGIC = 0x50505448; // "PPTH"
+
+    private final Path dir;
+
+    public TileHashStore(Path dir) {
+        this.dir = dir;
+        dir.toFile().mkdirs();
+    }
+
+    /**
+     * Returns null when nothing (valid) is stored for this file hash and tile size.
+     */
+    public PixelDiffEngine.TileGrid load(String sha256, int tileSize) {
+        File file = fileFor(sha256);
+        if (!file.isFile()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) return null;
+            int width = in.readInt(), height = in.readInt(), size = in.readInt();
+            if (size != tileSize) return null;
+
+            long[] hashes = new long[in.readInt()];
+            for (int i = 0; i < hashes.length; i++) hashes[i] = in.readLong();
+            PixelDiffEngine.TileGrid grid = new PixelDiffEngine.TileGrid(width, height, size, hashes);
+            return hashes.length == grid.cols() * grid.rows() ? grid : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void save(String sha256, PixelDiffEngine.TileGrid grid) {
+        try {
+            // Write to a temp file first, so a concurrent reader never sees half a file
+            Path tmp = Files.createTempFile(dir, sha256, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(grid.width());
+                out.writeInt(grid.height());
+                out.writeInt(grid.tileSize());
+                out.writeInt(grid.hashes().length);
+                for (long h : grid.hashes()) out.writeLong(h);
+            }
+            Files.move(tmp, fileFor(sha256).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Only an optimisation: the next run simply hashes the image again
+            log.warn("Could not store tile hashes for {}", sha256, e);
+        }
+    }
+
+    /**
+     * Deletes tile hashes of screenshots that are gone, once they are older than 'olderThanMillis'.
+     */
+    public int prune(Set<String> keepHashes, long olderThanMillis) {
+        File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(".tiles"));
+        int deleted = 0;
+        for (File file : files == null ? new File[0] : files) {
+            String hash = file.getName().substring(0, file.getName().length() - ".tiles".length());
+            if (!keepHashes.contains(hash) && file.lastModified() < olderThanMillis && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private File fileFor(String sha256) {
+        return dir.resolve(sha256 + ".tiles").toFile();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.pixelpatrol.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TRACE
+ * Span tree of ONE project test: capture staging / prod (navigation, readiness, screenshot, retries),
+ * then decode, diff and write of every comparison. Stored as JSON with the result and drawn as a
+ * waterfall in the dashboard. Offsets are milliseconds since the root span started.
+ */
+public final class Trace {
+
+    private static final int MAX_NOTE = 200;
+
+    private Trace() {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static final class Span {
+        public final String name;
+        public final long startMs;
+        public volatile long durationMs = -1; // -1 while still open
+        public volatile String note;
+
+        @JsonIgnore private final long origin;     // System.nanoTime() of the root span
+        @JsonIgnore private final long startNanos;
+        // Capture spans are added from the browser pool threads
+        private final List<Span> children = Collections.synchronizedList(new ArrayList<>());
+
+        private Span(String name, long origin, long startNanos) {
+            this.name = name;
+            this.origin = origin;
+            this.startNanos = startNanos;
+            this.startMs = TimeUnit.NANOSECONDS.toMillis(startNanos - origin);
+        }
+
+        public static Span root(String name) {
+            long now = System.nanoTime();
+            return new Span(name, now, now);
+        }
+
+        /**
+         * Opens a child span starting now. Close it with end().
+         */
+        public Span start(String name) {
+            return add(new Span(name, origin, System.nanoTime()));
+        }
+
+        /**
+         * Adds a child span that was timed elsewhere (System.nanoTime() values).
+         */
+        public Span record(String name, long startNanos, long endNanos) {
+            Span span = add(new Span(name, origin, startNanos));
+            span.durationMs = TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+            return span;
+        }
+
+        public Span end() {
+            if (durationMs < 0) {
+                durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            }
+            return this;
+        }
+
+        public Span end(String note) {
+            return note(note).end();
+        }
+
+        public Span note(String note) {
+            this.note = note != null ? summary(note) : null;
+            return this;
+        }
+
+        @JsonIgnore
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        public List<Span> getChildren() {
+            synchronized (children) {
+                return new ArrayList<>(children);
+            }
+        }
+
+        private Span add(Span child) {
+            children.add(child);
+            return child;
+        }
+    }
+
+    /**
+     * Browser errors run to dozens of lines ("Reason: Error {", "  message='...'", stack): the first
+     * meaningful line (plus the next one when it ends with a colon) is enough next to a bar.
+     */
+    public static String summary(String text) {
+        if (text == null) return "";
+        StringBuilder out = new StringBuilder();
+        for (String line : text.split("\n")) {
+            line = line.strip().replace("message='", "");
+            if (line.endsWith("Error {")) line = line.substring(0, line.length() - "Error {".length()).strip();
+            if (line.isEmpty()) continue;
+            if (!out.isEmpty()) out.append(' ');
+            out.append(line);
+            if (!line.endsWith(":")) break;
+        }
+        String summary = out.isEmpty() ? text.strip() : out.toString();
+        return summary.length() > MAX_NOTE ? summary.substring(0, MAX_NOTE) + "…" : summary;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.pixelpatrol.service;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of the diff loop (Java 21 incubator Vector API).
+ * Only loaded by PixelDiffEngine when the JVM was started with --add-modules jdk.incubator.vector,
+ * otherwise the class is never touched and the scalar kernel is used.
+ */
+public class VectorDiffKernel implements DiffKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public long countMismatches(int[] a, int aFrom, int[] b, int bFrom, int length, int mask) {
+        long count = 0;
+        int i = 0;
+        int upper = SPECIES.loopBound(length);
+
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, a, aFrom + i);
+            IntVector vb = IntVector.fromArray(SPECIES, b, bFrom + i);
+            VectorMask<Integer> differs = va.lanewise(VectorOperators.XOR, vb)
+                    .lanewise(VectorOperators.AND, mask)
+                    .compare(VectorOperators.NE, 0);
+            count += differs.trueCount();
+        }
+
+        // Tail that doesn't fill a whole vector
+        for (; i < length; i++) {
+            if (((a[aFrom + i] ^ b[bFrom + i]) & mask) != 0) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String name() { return "vector-" + SPECIES.length() + "x32"; }
+}
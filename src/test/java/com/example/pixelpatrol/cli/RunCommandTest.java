@@ -0,0 +1,115 @@
+package com.example.pixelpatrol.cli;
+
+import com.example.pixelpatrol.service.RunService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunCommandTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesSeparateAndInlineValues() {
+        RunCommand.Options o = RunCommand.Options.parse(new String[]{
+                "--project", "Home", "--project=Checkout", "--parallel=4", "--junit", "out/junit.xml", "--json=out/run.json"});
+
+        assertEquals(List.of("Home", "Checkout"), o.projects);
+        assertEquals(4, o.parallel);
+        assertEquals(Path.of("out/junit.xml"), o.junit);
+        assertEquals(Path.of("out/run.json"), o.json);
+        assertNull(o.collection);
+        assertFalse(o.all);
+    }
+
+    @Test
+    void needsExactlyOneTarget() {
+        assertThrows(IllegalArgumentException.class, () -> RunCommand.Options.parse(new String[]{}));
+        assertThrows(IllegalArgumentException.class, () -> RunCommand.Options.parse(new String[]{"--all", "--collection", "Checkout"}));
+        assertThrows(IllegalArgumentException.class, () -> RunCommand.Options.parse(new String[]{"--project", "Home", "--all"}));
+        assertEquals("Checkout", RunCommand.Options.parse(new String[]{"--collection=Checkout"}).collection);
+    }
+
+    @Test
+    void badArgumentsExitWithUsageBeforeSpringStarts() {
+        assertEquals(RunCommand.EXIT_USAGE, RunCommand.launch(new String[]{"--all", "--parallel", "0"}));
+        assertEquals(RunCommand.EXIT_USAGE, RunCommand.launch(new String[]{"--all", "--parallel=many"}));
+        assertEquals(RunCommand.EXIT_USAGE, RunCommand.launch(new String[]{"--all", "--junit"}));
+        assertEquals(RunCommand.EXIT_USAGE, RunCommand.launch(new String[]{"--all", "--verbose"}));
+        assertEquals(RunCommand.EXIT_USAGE, RunCommand.launch(new String[]{"--all", "stray"}));
+    }
+
+    @Test
+    void propertiesArePassedToSpringAfterTheDefaults() {
+        RunCommand.Options o = RunCommand.Options.parse(new String[]{
+                "--all", "--parallel", "2", "--spring.datasource.url=jdbc:sqlite:/ci/data.db", "--pixelpatrol.capture.retries=0"});
+
+        assertEquals(Map.of("spring.datasource.url", "jdbc:sqlite:/ci/data.db", "pixelpatrol.capture.retries", "0"), o.properties);
+        List<String> args = Arrays.asList(o.springArgs());
+        assertTrue(args.contains("--spring.main.web-application-type=none"));
+        assertTrue(args.contains("--pixelpatrol.capture.workers=2"));
+        assertTrue(args.contains("--pixelpatrol.runs.concurrency=2"));
+        assertTrue(args.contains("--spring.datasource.url=jdbc:sqlite:/ci/data.db"));
+        assertTrue(args.contains("--pixelpatrol.capture.retries=0"));
+    }
+
+    @Test
+    void junitCountsFailuresAndErrorsPerVariant() throws Exception {
+        RunService.ProjectResult matrix = result("Home", "FAIL");
+        matrix.variants = List.of(variant("Home", "chromium/desktop", "PASS"), variant("Home", "firefox/desktop", "FAIL"),
+                variant("Home", "webkit/mobile", "ERROR"));
+        List<RunService.ProjectResult> results = new ArrayList<>(List.of(matrix, result("Checkout", "FAIL"), result("Login", "ERROR"),
+                result("About", "PASS")));
+        Path file = dir.resolve("reports/junit.xml");
+
+        RunCommand.writeJunit(file, "Marketing", LocalDateTime.now().minusSeconds(5), results);
+
+        Document xml = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+        Element suite = (Element) xml.getElementsByTagName("testsuite").item(0);
+        assertEquals("Marketing", suite.getAttribute("name"));
+        assertEquals("6", suite.getAttribute("tests"));
+        assertEquals("2", suite.getAttribute("failures"));
+        assertEquals("2", suite.getAttribute("errors"));
+        assertEquals(2, xml.getElementsByTagName("failure").getLength());
+        assertEquals(2, xml.getElementsByTagName("error").getLength());
+
+        NodeList cases = xml.getElementsByTagName("testcase");
+        Element firefox = (Element) cases.item(1);
+        assertEquals("Home [firefox/desktop]", firefox.getAttribute("name"));
+        assertEquals("VisualDifference", ((Element) firefox.getElementsByTagName("failure").item(0)).getAttribute("type"));
+        Element webkit = (Element) cases.item(2);
+        assertEquals("CaptureError", ((Element) webkit.getElementsByTagName("error").item(0)).getAttribute("type"));
+        assertEquals(0, ((Element) cases.item(0)).getChildNodes().getLength());
+    }
+
+    private static RunService.ProjectResult variant(String name, String variant, String status) {
+        RunService.ProjectResult r = result(name, status);
+        r.variant = variant;
+        return r;
+    }
+
+    private static RunService.ProjectResult result(String name, String status) {
+        RunService.ProjectResult r = new RunService.ProjectResult();
+        r.projectId = (long) name.hashCode();
+        r.projectName = name;
+        r.status = status;
+        r.message = "ERROR".equals(status) ? "Timeout 30000ms exceeded" : "Visual mismatch";
+        r.diffPercent = "FAIL".equals(status) ? 1.5f : 0;
+        r.startedAt = LocalDateTime.now().minusSeconds(2);
+        r.finishedAt = LocalDateTime.now();
+        return r;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.pixelpatrol.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpFileSenderTest {
+
+    private static final String ETAG = "\"abc123\"";
+    private static final long MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesSingleByteRanges() {
+        assertArrayEquals(new long[]{0, 99}, HttpFileSender.parseRange("bytes=0-99", 1000));
+        // Open-ended and past the end: up to the last byte
+        assertArrayEquals(new long[]{900, 999}, HttpFileSender.parseRange("bytes=900-", 1000));
+        assertArrayEquals(new long[]{900, 999}, HttpFileSender.parseRange("bytes=900-5000", 1000));
+        // Suffix: the last n bytes, the whole file when n is bigger
+        assertArrayEquals(new long[]{800, 999}, HttpFileSender.parseRange("bytes=-200", 1000));
+        assertArrayEquals(new long[]{0, 999}, HttpFileSender.parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    void unsatisfiableRangesAreNull() {
+        assertNull(HttpFileSender.parseRange("bytes=1000-", 1000));
+        assertNull(HttpFileSender.parseRange("bytes=500-400", 1000));
+        assertNull(HttpFileSender.parseRange("bytes=-0", 1000));
+    }
+
+    @Test
+    void multipleRangesAndOtherUnitsAreServedWhole() {
+        assertEquals(0, HttpFileSender.parseRange("bytes=0-9,20-29", 1000).length);
+        assertEquals(0, HttpFileSender.parseRange("items=0-9", 1000).length);
+        assertEquals(0, HttpFileSender.parseRange("bytes=abc", 1000).length);
+        assertEquals(0, HttpFileSender.parseRange("bytes=a-b", 1000).length);
+    }
+
+    @Test
+    void ifNoneMatchBeatsIfModifiedSince() {
+        MockHttpServletRequest matching = new MockHttpServletRequest();
+        matching.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + ETAG);
+        assertTrue(HttpFileSender.notModified(matching, ETAG, MODIFIED));
+
+        // A stale ETag means modified, however recent If-Modified-Since is
+        MockHttpServletRequest stale = new MockHttpServletRequest();
+        stale.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        stale.addHeader(HttpHeaders.IF_MODIFIED_SINCE, MODIFIED + 60_000);
+        assertFalse(HttpFileSender.notModified(stale, ETAG, MODIFIED));
+
+        MockHttpServletRequest since = new MockHttpServletRequest();
+        since.addHeader(HttpHeaders.IF_MODIFIED_SINCE, MODIFIED);
+        assertTrue(HttpFileSender.notModified(since, ETAG, MODIFIED + 999)); // Second precision
+        MockHttpServletRequest older = new MockHttpServletRequest();
+        older.addHeader(HttpHeaders.IF_MODIFIED_SINCE, MODIFIED - 1000);
+        assertFalse(HttpFileSender.notModified(older, ETAG, MODIFIED));
+
+        assertFalse(HttpFileSender.notModified(new MockHttpServletRequest(), ETAG, MODIFIED));
+    }
+
+    @Test
+    void sendsPartialContentAndRejectsUnsatisfiableRanges() throws Exception {
+        byte[] content = new byte[1000];
+        Arrays.fill(content, (byte) 7);
+        content[990] = 42;
+        Path file = Files.write(dir.resolve("image.png"), content);
+
+        MockHttpServletRequest range = new MockHttpServletRequest("GET", "/api/images/image.png");
+        range.addHeader(HttpHeaders.RANGE, "bytes=-10");
+        MockHttpServletResponse partial = new MockHttpServletResponse();
+        HttpFileSender.sendFile(range, partial, file, "image/png", ETAG, MODIFIED, "no-cache");
+        assertEquals(206, partial.getStatus());
+        assertEquals("bytes 990-999/1000", partial.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(10, partial.getContentAsByteArray().length);
+        assertEquals(42, partial.getContentAsByteArray()[0]);
+
+        // If-Range for another version: the whole file
+        range.addHeader(HttpHeaders.IF_RANGE, "\"older\"");
+        MockHttpServletResponse whole = new MockHttpServletResponse();
+        HttpFileSender.sendFile(range, whole, file, "image/png", ETAG, MODIFIED, "no-cache");
+        assertEquals(200, whole.getStatus());
+        assertArrayEquals(content, whole.getContentAsByteArray());
+
+        MockHttpServletRequest beyond = new MockHttpServletRequest("GET", "/api/images/image.png");
+        beyond.addHeader(HttpHeaders.RANGE, "bytes=1000-");
+        MockHttpServletResponse unsatisfiable = new MockHttpServletResponse();
+        HttpFileSender.sendFile(beyond, unsatisfiable, file, "image/png", ETAG, MODIFIED, "no-cache");
+        assertEquals(416, unsatisfiable.getStatus());
+        assertEquals("bytes */1000", unsatisfiable.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(0, unsatisfiable.getContentAsByteArray().length);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.repository.TestResultRepository;
+import com.example.pixelpatrol.repository.TestRunRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.*;
+
+class ArtifactRetentionServiceTest {
+
+    private static final long TWO_HOURS_AGO = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sweepKeepsReferencedAndRecentObjects() throws Exception {
+        ArtifactStore store = new ArtifactStore(dir.resolve("store"));
+        Path orphan = stored(store, "orphan", ".png", TWO_HOURS_AGO);
+        Path justStored = stored(store, "just stored by a running test", ".png", System.currentTimeMillis());
+        Path referenced = stored(store, "referenced", ".png", TWO_HOURS_AGO);
+        Path staging = stored(store, "diff staging", ".png", TWO_HOURS_AGO);
+        Path atlas = stored(store, "diff atlas", ".png", TWO_HOURS_AGO);
+        Path manifest = stored(store, """
+                {"version":1,"staging":"%s","atlas":"%s","width":1,"height":1,"overlapWidth":1,"overlapHeight":1,
+                 "stripRows":1,"atlasWidth":1,"patches":[]}""".formatted(staging.getFileName(), atlas.getFileName()),
+                ".json", TWO_HOURS_AGO);
+        Path oldTemp = Files.writeString(store.newTempFile(".png"), "crashed capture");
+        Files.setLastModifiedTime(oldTemp, FileTime.fromMillis(TWO_HOURS_AGO));
+        Path newTemp = store.newTempFile(".png");
+
+        TestResultRepository results = mock(TestResultRepository.class);
+        when(results.findReferencedPaths()).thenReturn(List.of(referenced.toString(), manifest.toString()));
+        ComparisonService comparisons = mock(ComparisonService.class);
+        ThumbnailService thumbnails = mock(ThumbnailService.class);
+        ArtifactRetentionService retention = new ArtifactRetentionService(store, comparisons, thumbnails,
+                mock(HistoryService.class), mock(TestRunRepository.class), results, 30, 500, 5120, 60);
+
+        long orphanSize = Files.size(orphan);
+        ArtifactRetentionService.Report report = retention.evict();
+
+        assertEquals(1, report.deletedObjects());
+        assertEquals(orphanSize, report.freedBytes());
+        assertFalse(Files.exists(orphan));
+        // Unreferenced but younger than the grace period: a test may be about to reference it
+        assertTrue(Files.exists(justStored));
+        assertTrue(Files.exists(referenced));
+        // Kept through the diff manifest that points at them
+        assertTrue(Files.exists(manifest));
+        assertTrue(Files.exists(staging));
+        assertTrue(Files.exists(atlas));
+        assertFalse(Files.exists(oldTemp));
+        assertTrue(Files.exists(newTemp));
+
+        verify(comparisons).pruneTileHashes(anySet(), anyLong());
+        verify(thumbnails).prune(anySet(), anyLong());
+    }
+
+    private static Path stored(ArtifactStore store, String content, String extension, long modified) throws Exception {
+        Path file = Files.writeString(store.newTempFile(extension), content, StandardCharsets.UTF_8);
+        Path object = store.put(file, extension);
+        Files.setLastModifiedTime(object, FileTime.fromMillis(modified));
+        return object;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.pixelpatrol.service;
+
+import com.example.pixelpatrol.model.Project;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureMatrixTest {
+
+    @Test
+    void emptyProjectIsTheDefaultVariant() {
+        List<CaptureMatrix.Variant> variants = CaptureMatrix.of(project(null, null));
+        assertEquals(List.of(CaptureMatrix.DEFAULT), variants);
+        assertTrue(CaptureMatrix.isDefault(variants));
+    }
+
+    @Test
+    void browsersFirstThenViewportsWithoutDuplicates() {
+        List<CaptureMatrix.Variant> variants = CaptureMatrix.of(project(" Firefox, chromium,firefox ", "mobile, 1440x900,MOBILE"));
+        assertEquals(List.of("firefox/mobile", "firefox/1440x900", "chromium/mobile", "chromium/1440x900"),
+                variants.stream().map(CaptureMatrix.Variant::label).toList());
+
+        CaptureMatrix.Viewport custom = variants.get(1).viewport();
+        assertEquals(1440, custom.width());
+        assertEquals(900, custom.height());
+        assertFalse(custom.mobile());
+        assertFalse(CaptureMatrix.isDefault(variants));
+    }
+
+    @Test
+    void unknownOrOutOfRangeValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CaptureMatrix.browsers("chrome"));
+        assertThrows(IllegalArgumentException.class, () -> CaptureMatrix.viewports("watch"));
+        assertThrows(IllegalArgumentException.class, () -> CaptureMatrix.viewports("100x900"));
+        assertThrows(IllegalArgumentException.class, () -> CaptureMatrix.viewports("1440x"));
+        assertThrows(IllegalArgumentException.class, () -> CaptureMatrix.viewports("x900"));
+    }
+
+    @Test
+    void firefoxNeverEmulatesMobile() {
+        List<CaptureMatrix.Variant> variants = CaptureMatrix.of(project("firefox,webkit", "mobile"));
+        assertFalse(variants.get(0).emulatesMobile());
+        assertEquals("firefox", variants.get(0).profile());
+        assertTrue(variants.get(1).emulatesMobile());
+        assertEquals("webkit/mobile", variants.get(1).profile());
+    }
+
+    @Test
+    void pageGroupsSplitByBrowserAndEmulationProfile() {
+        List<CaptureMatrix.Variant> variants = CaptureMatrix.of(project("chromium,firefox", "desktop,mobile,laptop,tablet"));
+        List<List<String>> groups = CaptureMatrix.pageGroups(variants).stream()
+                .map(group -> group.stream().map(CaptureMatrix.Variant::label).toList())
+                .toList();
+
+        assertEquals(List.of(
+                List.of("chromium/desktop", "chromium/laptop"),
+                List.of("chromium/mobile", "chromium/tablet"),
+                // Firefox only resizes, so all its viewports share one page
+                List.of("firefox/desktop", "firefox/mobile", "firefox/laptop", "firefox/tablet")), groups);
+    }
+
+    private static Project project(String browsers, String viewports) {
+        Project project = new Project();
+        project.setBrowsers(browsers);
+        project.setViewports(viewports);
+        return project;
+    }
+}
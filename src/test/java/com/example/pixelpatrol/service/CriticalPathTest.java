@@ -0,0 +1,70 @@
+package com.example.pixelpatrol.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CriticalPathTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    @Test
+    void walksBackThroughTheSlotsThatDecidedTheWallTime() {
+        // Two slots: B frees one for C, A frees the other for D, C frees it again for E
+        List<RunService.ProjectResult> results = List.of(
+                result(1L, "A", 0, 10),
+                result(2L, "B", 0, 4),
+                result(3L, "C", 4, 12),
+                result(4L, "D", 10, 15),
+                result(5L, "E", 12, 14));
+
+        Map<String, Object> timeline = CriticalPath.ofResults(results);
+
+        assertEquals(15_000L, timeline.get("wallMillis"));
+        assertEquals(List.of(1L, 4L), timeline.get("criticalPath"));
+
+        List<Map<String, Object>> projects = projects(timeline);
+        assertEquals(5, projects.size());
+        Map<String, Object> d = projects.stream().filter(p -> "D".equals(p.get("projectName"))).findFirst().orElseThrow();
+        assertEquals(10_000L, d.get("offsetMillis"));
+        assertEquals(5_000L, d.get("durationMillis"));
+        assertEquals(true, d.get("critical"));
+        assertEquals(List.of(true, false, false, true, false), projects.stream().map(p -> p.get("critical")).toList());
+    }
+
+    @Test
+    void projectsWithoutTimesAreLeftOut() {
+        RunService.ProjectResult failed = result(2L, "Broken", 0, 0);
+        failed.startedAt = null;
+        Map<String, Object> timeline = CriticalPath.ofResults(List.of(result(1L, "A", 2, 5), failed));
+
+        assertEquals(3_000L, timeline.get("wallMillis"));
+        assertEquals(List.of(1L), timeline.get("criticalPath"));
+        assertEquals(1, projects(timeline).size());
+    }
+
+    @Test
+    void emptyBatchHasAnEmptyTimeline() {
+        Map<String, Object> timeline = CriticalPath.ofResults(List.of());
+        assertEquals(0L, timeline.get("wallMillis"));
+        assertEquals(List.of(), timeline.get("criticalPath"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> projects(Map<String, Object> timeline) {
+        return (List<Map<String, Object>>) timeline.get("projects");
+    }
+
+    private static RunService.ProjectResult result(Long id, String name, int startSeconds, int endSeconds) {
+        RunService.ProjectResult r = new RunService.ProjectResult();
+        r.projectId = id;
+        r.projectName = name;
+        r.startedAt = T0.plusSeconds(startSeconds);
+        r.finishedAt = T0.plusSeconds(endSeconds);
+        return r;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.pixelpatrol.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiffArtifactTest {
+
+    // Staging is 100x700, production 90x650: everything outside the overlap is a size mismatch
+    private static final int WIDTH = 100, HEIGHT = 700, OVERLAP_WIDTH = 90, OVERLAP_HEIGHT = 650;
+    // Bigger than DiffArtifact.COMPOSE_ROWS on purpose: patches span several compose strips
+    private static final int STRIP_ROWS = 300;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rectanglesCoverTheDirtyCellsWithoutCrossingStrips() {
+        List<int[]> patches = DiffArtifact.rectangles(dirtyCells(), WIDTH, HEIGHT, STRIP_ROWS);
+
+        boolean[] covered = new boolean[WIDTH * HEIGHT];
+        for (int[] p : patches) {
+            assertEquals(p[1] / STRIP_ROWS, (p[1] + p[3] - 1) / STRIP_ROWS, "patch crosses a strip boundary");
+            assertTrue(p[0] + p[2] <= WIDTH && p[1] + p[3] <= HEIGHT, "patch leaves the image");
+            for (int y = p[1]; y < p[1] + p[3]; y++) {
+                for (int x = p[0]; x < p[0] + p[2]; x++) {
+                    assertFalse(covered[y * WIDTH + x], "patches overlap");
+                    covered[y * WIDTH + x] = true;
+                }
+            }
+        }
+        BitSet cells = dirtyCells();
+        int cols = (WIDTH + DiffArtifact.CELL - 1) / DiffArtifact.CELL;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean dirty = cells.get((y / DiffArtifact.CELL) * cols + x / DiffArtifact.CELL);
+                assertEquals(dirty, covered[y * WIDTH + x], "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void composeRebuildsPatchesOnFadedStagingAndRedMismatch() throws Exception {
+        ArtifactStore store = new ArtifactStore(dir.resolve("store"));
+        BufferedImage stagingImage = randomImage(WIDTH, HEIGHT);
+        Path stagingFile = store.newTempFile(".png");
+        ImageIO.write(stagingImage, "png", stagingFile.toFile());
+        String stagingName = store.put(stagingFile, ".png").getFileName().toString();
+
+        // The rendered diff: every pixel unique, so a patch pasted in the wrong place shows
+        int[] rendered = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < rendered.length; i++) rendered[i] = 0xFF000000 | (i * 7919) & 0xFFFFFF;
+        List<int[]> patches = DiffArtifact.rectangles(dirtyCells(), WIDTH, HEIGHT, STRIP_ROWS);
+
+        Path manifest;
+        try (DiffArtifact.Writer writer = new DiffArtifact.Writer(store, stagingName, WIDTH, HEIGHT,
+                OVERLAP_WIDTH, OVERLAP_HEIGHT, STRIP_ROWS, patches)) {
+            // Handed over strip by strip, like the streaming comparison does
+            for (int y0 = 0; y0 < HEIGHT; y0 += STRIP_ROWS) {
+                int y1 = Math.min(y0 + STRIP_ROWS, HEIGHT);
+                int[] strip = new int[(y1 - y0) * WIDTH];
+                System.arraycopy(rendered, y0 * WIDTH, strip, 0, strip.length);
+                writer.writePatches(strip, WIDTH, y0, y1);
+            }
+            manifest = writer.finish();
+        }
+        assertEquals(List.of(stagingName, DiffArtifact.read(manifest).atlas()), DiffArtifact.references(manifest));
+
+        int[] expected = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                expected[y * WIDTH + x] = x < OVERLAP_WIDTH && y < OVERLAP_HEIGHT
+                        ? PixelDiffEngine.fade(stagingImage.getRGB(x, y)) : 0xFFFF0000;
+            }
+        }
+        for (int[] p : patches) {
+            for (int y = p[1]; y < p[1] + p[3]; y++) {
+                System.arraycopy(rendered, y * WIDTH + p[0], expected, y * WIDTH + p[0], p[2]);
+            }
+        }
+
+        // 1. Row sink: strips of at most COMPOSE_ROWS, top to bottom
+        int[] composed = new int[WIDTH * HEIGHT];
+        int[] at = {0};
+        DiffArtifact.compose(manifest, DiffArtifact.read(manifest), store, (pixels, count) -> {
+            assertTrue(count > 0 && count <= DiffArtifact.COMPOSE_ROWS);
+            System.arraycopy(pixels, 0, composed, at[0] * WIDTH, count * WIDTH);
+            at[0] += count;
+        });
+        assertEquals(HEIGHT, at[0]);
+        assertArrayEquals(expected, composed);
+
+        // 2. PNG: the same pixels
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        DiffArtifact.compose(manifest, store, png);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+        assertArrayEquals(expected, image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+        assertTrue(Files.exists(store.resolve(DiffArtifact.read(manifest).atlas())));
+    }
+
+    // A lone corner cell, a block across the strip boundary at y 300 (y 256..351) and a cell cut by the right edge
+    private static BitSet dirtyCells() {
+        int cols = (WIDTH + DiffArtifact.CELL - 1) / DiffArtifact.CELL;
+        BitSet cells = new BitSet();
+        cells.set(0);
+        for (int row = 8; row <= 10; row++) {
+            cells.set(row * cols + 1);
+            cells.set(row * cols + 2);
+        }
+        cells.set(20 * cols + 3);
+        return cells;
+    }
+
+    private static BufferedImage randomImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+}
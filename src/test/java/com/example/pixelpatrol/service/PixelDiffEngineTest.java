@@ -0,0 +1,116 @@
+package com.example.pixelpatrol.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PixelDiffEngineTest {
+
+    @Test
+    void identicalImagesHaveNoMismatch() {
+        int[] a = randomPixels(1920 * 700, 1);
+        try (PixelDiffEngine engine = new PixelDiffEngine(4)) {
+            assertEquals(0, engine.countMismatches(a, a.clone(), 1920, 700));
+        }
+    }
+
+    @Test
+    void countsEveryChangedPixelAcrossBands() {
+        int width = 333, height = 1001; // Odd sizes: partial bands and vector tails
+        int[] a = randomPixels(width * height, 2);
+        int[] b = a.clone();
+        Random random = new Random(3);
+        int changed = 0;
+        for (int i = 0; i < b.length; i += 1 + random.nextInt(50)) {
+            b[i] ^= 0x00010000;
+            changed++;
+        }
+
+        try (PixelDiffEngine scalar = new PixelDiffEngine(3, new DiffKernel.Scalar());
+             PixelDiffEngine detected = new PixelDiffEngine(3)) {
+            assertEquals(changed, scalar.countMismatches(a, b, width, height));
+            assertEquals(changed, detected.countMismatches(a, b, width, height));
+        }
+    }
+
+    @Test
+    void alphaChannelIsIgnored() {
+        int[] a = {0xFF123456, 0x00ABCDEF};
+        int[] b = {0x00123456, 0xFFABCDEF};
+        try (PixelDiffEngine engine = new PixelDiffEngine(1)) {
+            assertEquals(0, engine.countMismatches(a, b, 2, 1));
+        }
+    }
+
+    @Test
+    void renderMarksChangedPixelsRed() {
+        int[] a = {0xFFFFFFFF, 0xFF000000};
+        int[] b = {0xFFFFFFFF, 0xFF000001};
+        int[] out = new int[2];
+        try (PixelDiffEngine engine = new PixelDiffEngine(1)) {
+            engine.renderDiff(a, b, 2, 1, out);
+        }
+        assertEquals(PixelDiffEngine.fade(0xFFFFFFFF), out[0]);
+        assertEquals(0xFFFF0000, out[1]);
+    }
+
+    @Test
+    void perceptualModeIgnoresTinyColorShifts() {
+        int[] a = {0xFF808080, 0xFF808080, 0xFF808080, 0xFF808080};
+        int[] b = {0xFF818181, 0xFF808080, 0xFF808080, 0xFF00FF00};
+        PixelDiffEngine.Options perceptual = new PixelDiffEngine.Options(true, 0.1, false);
+        try (PixelDiffEngine engine = new PixelDiffEngine(1)) {
+            assertEquals(2, engine.countMismatches(a, b, 4, 1));
+            assertEquals(1, engine.countMismatches(a, b, 4, 1, perceptual));
+        }
+    }
+
+    @Test
+    void perceptualModeIgnoresAntialiasedEdges() {
+        // Black/white vertical edge; in 'b' the edge column is smoothed to gray
+        int width = 6, height = 6;
+        int[] a = new int[width * height];
+        int[] b = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int color = x < 3 ? 0xFF000000 : 0xFFFFFFFF;
+                a[y * width + x] = color;
+                b[y * width + x] = x == 3 ? 0xFF808080 : color;
+            }
+        }
+        try (PixelDiffEngine engine = new PixelDiffEngine(1)) {
+            assertEquals(height, engine.countMismatches(a, b, width, height, new PixelDiffEngine.Options(true, 0.1, false)));
+            assertEquals(0, engine.countMismatches(a, b, width, height, new PixelDiffEngine.Options(true, 0.1, true)));
+        }
+    }
+
+    @Test
+    void dirtyTilesFindTheSameMismatchesAsAFullScan() {
+        int width = 700, height = 900, tile = 256; // Partial tiles on the right and bottom edge
+        int[] a = randomPixels(width * height, 4);
+        int[] b = a.clone();
+        b[10 * width + 10] ^= 0x000000FF;
+        b[899 * width + 699] ^= 0x0000FF00;
+        b[300 * width + 600] ^= 0xFF000000; // Alpha only: tile stays clean
+
+        try (PixelDiffEngine engine = new PixelDiffEngine(2)) {
+            PixelDiffEngine.TileGrid ga = engine.tileGrid(a, width, height, tile);
+            PixelDiffEngine.TileGrid gb = engine.tileGrid(b, width, height, tile);
+            int[] dirty = ga.dirtyTiles(gb);
+
+            assertEquals(2, dirty.length);
+            assertEquals(0, engine.tileGrid(a.clone(), width, height, tile).dirtyTiles(ga).length);
+            assertEquals(engine.countMismatches(a, b, width, height),
+                    engine.countMismatches(a, b, width, height, PixelDiffEngine.Options.EXACT, tile, dirty));
+        }
+    }
+
+    private static int[] randomPixels(int size, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[size];
+        for (int i = 0; i < size; i++) pixels[i] = random.nextInt();
+        return pixels;
+    }
+}
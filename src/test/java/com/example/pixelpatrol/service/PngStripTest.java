@@ -0,0 +1,65 @@
+package com.example.pixelpatrol.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PngStripTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readerMatchesImageIoForRgbAndRgba() throws Exception {
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB}) {
+            BufferedImage img = randomImage(301, 517, type);
+            Path file = dir.resolve("in_" + type + ".png");
+            ImageIO.write(img, "png", file.toFile());
+
+            int[] expected = img.getRGB(0, 0, 301, 517, null, 0, 301);
+            int[] actual = new int[expected.length];
+            try (StripReader reader = StripReader.open(file)) {
+                assertInstanceOf(PngStripReader.class, reader);
+                // Uneven strips on purpose
+                for (int y = 0; y < 517; y += 100) {
+                    reader.readRows(actual, y * 301, Math.min(100, 517 - y));
+                }
+            }
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void writerOutputIsReadableByImageIo() throws Exception {
+        BufferedImage img = randomImage(123, 77, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = img.getRGB(0, 0, 123, 77, null, 0, 123);
+        Path file = dir.resolve("out.png");
+
+        try (PngStripWriter writer = new PngStripWriter(file, 123, 77)) {
+            writer.writeRows(pixels, 0, 40);
+            writer.writeRows(pixels, 40 * 123, 37);
+        }
+
+        BufferedImage back = ImageIO.read(file.toFile());
+        assertArrayEquals(pixels, back.getRGB(0, 0, 123, 77, null, 0, 123));
+    }
+
+    private static BufferedImage randomImage(int width, int height, int type) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            // Mix flat runs and noise so every PNG filter type gets used
+            int base = random.nextInt();
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, (x / 20) % 2 == 0 ? base : random.nextInt());
+            }
+        }
+        return img;
+    }
+}